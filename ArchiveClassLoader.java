@@ -0,0 +1,151 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static building.Makeshift.Bootstrap.outDirectory;
+import static building.Makeshift.Bootstrap.Unhandled;
+import static java.io.File.separatorChar;
+
+
+/** A class loader for code compiled to the output directory, which loads the class files
+  * from their {@linkplain ClassArchive archives} where possible.  It maps the archive of a package
+  * on first loading a class of the package, synchronizing it first if out of date, then defines
+  * each class of the archive directly from the mapped memory.  Classes that are not archived
+  * it loads from their class files, failing that delegating to its parent.  The classes
+  * of Makeshift proper (package `building.Makeshift`) it leaves to the parent alone.
+  */
+public final class ArchiveClassLoader extends ClassLoader {
+
+
+    static { registerAsParallelCapable(); }
+
+
+
+    /** @param parent The class loader of Makeshift proper, the parent of the new loader.
+      */
+    public ArchiveClassLoader( final ClassLoader parent ) {
+        super( "building.Makeshift", parent );
+        try {
+            domain = new ProtectionDomain( new CodeSource( outDirectory.toUri().toURL(),
+              (CodeSigner[])null ), null, this, null ); }
+        catch( MalformedURLException x ) { throw new Unhandled( x ); }}
+
+
+
+    /** Runs a Java program from the output directory, loading its classes by an archive class loader.
+      * The parent loader is the application class loader, whose class path must include
+      * the classes of Makeshift proper.
+      *
+      *     @param arguments The binary name of the main class, followed by any arguments for it.
+      */
+    public static void main( final String[] arguments ) throws Throwable {
+        if( arguments.length < 1 ) {
+            System.err.println(
+              "Usage: java building.Makeshift.ArchiveClassLoader <main class> <argument>..." );
+            System.exit( 1 ); }
+        final var loader = new ArchiveClassLoader( ClassLoader.getSystemClassLoader() );
+        Thread.currentThread().setContextClassLoader( loader );
+        try {
+            Class.forName( arguments[0], true, loader ).getMethod( "main", String[].class )
+              .invoke( null/*static*/, (Object)Arrays.copyOfRange( arguments, 1, arguments.length )); }
+        catch( InvocationTargetException x ) { throw x.getCause(); }}
+
+
+
+   // ━━━  C l a s s   L o a d e r  ━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━
+
+
+    protected @Override URL findResource( final String name ) {
+        final Path p = outDirectory.resolve( name );
+        if( !Files.isRegularFile( p )) return null;
+        try { return p.toUri().toURL(); }
+        catch( MalformedURLException x ) { throw new Unhandled( x ); }}
+
+
+
+    protected @Override Class<?> loadClass( final String name, final boolean toResolve )
+          throws ClassNotFoundException {
+        final int d = name.lastIndexOf( '.' );
+        if( d < 0 || name.startsWith( "java." ) || name.substring(0,d).equals( "building.Makeshift" )) {
+            return super.loadClass( name, toResolve ); } // Parent first.
+        synchronized( getClassLoadingLock( name )) {
+            Class<?> c = findLoadedClass( name );
+            if( c == null ) {
+                final Path directory = outDirectory.resolve( name.substring(0,d).replace( '.',
+                  separatorChar ));
+                final Mapping m = mapping( directory );
+                if( !m.isDirectory ) return super.loadClass( name, toResolve );
+                final String simpleName = name.substring( d + 1 );
+                ByteBuffer b = m.archive == null ? null : m.archive.classFile( simpleName );
+                if( b == null ) {
+                    try { b = ByteBuffer.wrap( Files.readAllBytes( directory.resolve(
+                      simpleName + ".class" ))); }
+                    catch( NoSuchFileException x ) { return super.loadClass( name, toResolve ); }
+                    catch( IOException x ) { throw new Unhandled( x ); }}
+                c = defineClass( name, b, domain ); }
+            if( toResolve ) resolveClass( c );
+            return c; }}
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    private final ProtectionDomain domain;
+
+
+
+    /** Gives the present mapping of the archive of the given output directory.
+      */
+    private Mapping mapping( final Path directory ) {
+        final long generation = ClassArchive.generation( directory );
+        return mappings.compute( directory, (_d, mOld) -> {
+            if( mOld != null && mOld.generation == generation ) return mOld;
+            final ClassArchive archive = ClassArchive.read( directory ); // Which might sync it, so
+            return new Mapping( ClassArchive.generation(directory), // regenerating it.
+              Files.isDirectory(directory), archive ); }); }
+
+
+
+    /** The mapping of each output directory consulted, as last made.
+      */
+    private final Map<Path,Mapping> mappings = new ConcurrentHashMap<>();
+
+
+
+   // ▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀
+
+
+    /** An archive as mapped at a given generation of its directory.
+      *
+      *     @see ClassArchive#generation(Path)
+      */
+    private static final class Mapping {
+
+        Mapping( final long generation, final boolean isDirectory, final ClassArchive archive ) {
+            this.generation = generation;
+            this.isDirectory = isDirectory;
+            this.archive = archive; }
+
+        final ClassArchive archive; // Null if the directory has none.
+
+        final long generation;
+
+        final boolean isDirectory; }} // Whether the directory exists.
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
@@ -0,0 +1,234 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static building.Makeshift.Project.outDirectory;
+import static building.Makeshift.Project.simpleTypeName;
+import static building.Makeshift.Project.Unhandled;
+import static building.Makeshift.Project.UserError;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+
+/** A compiler of Java source code in batches of bounded memory use.  It orders the sources
+  * by their mutual references, such that whatever a source refers to is compiled in the same batch
+  * or an earlier one.  It sizes each batch to fit the compiler within a budget of resident memory,
+  * going by the memory use per source measured for the project both in earlier builds
+  * and in earlier batches of the present build.
+  */
+public final class BatchCompiler {
+
+
+    private BatchCompiler() {}
+
+
+
+    /** Compiles Java source code to class files, in batches if need be.
+      *
+      *     @param projectPackage The proper package of the project whose source code is being compiled.
+      *     @param sourceNames The proper path of each source file to compile.
+      *     @param additionalArguments Additional arguments for `javac`.
+      *     @param memoryBudget The most resident memory in bytes that the compiler should use,
+      *       or zero for no limit, in which case the sources are compiled in a single batch.
+      *     @see Project#compile(String,List,List)
+      */
+    public static void compile( final String projectPackage, final List<String> sourceNames,
+          final List<String> additionalArguments, final long memoryBudget ) throws UserError {
+        if( memoryBudget <= 0 ) {
+            Project.compile( projectPackage, sourceNames, additionalArguments );
+            return; }
+        final Path estimateFile = outDirectory.resolve( Project.projectPath ).resolve( "javac_memory" )
+          .resolve( projectPackage );
+        final Estimate estimate = new Estimate( estimateFile );
+        final List<String> batch = new ArrayList<>();
+        for( final List<String> component: componentsInOrder( sourceNames )) {
+            final int limit = estimate.batchLimit( memoryBudget );
+            if( batch.size() > 0 && batch.size() + component.size() > limit ) {
+                compileBatch( projectPackage, batch, additionalArguments, estimate );
+                batch.clear(); }
+            batch.addAll( component ); } // Never dividing a component, which would fail to compile.
+        compileBatch( projectPackage, batch, additionalArguments, estimate );
+        estimate.write(); }
+
+
+
+    /** An allowance in bytes for the resident memory of the compiler apart from its sources,
+      * such as the runtime itself and the classes of the compiler.
+      */
+    public static final long compilerFootprint = 128L * 1024 * 1024;
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    private static void compileBatch( final String projectPackage, final List<String> batch,
+          final List<String> additionalArguments, final Estimate estimate ) throws UserError {
+        final int size = batch.size();
+        Project.compile( projectPackage, batch, additionalArguments,
+          peak -> estimate.learn( (peak - compilerFootprint) / size )); }
+
+
+
+    /** Partitions the given sources into strongly connected components of the graph of their mutual
+      * references, ordering the components such that each comes after all components it refers to.
+      * A source is taken to refer to another if it contains an identifier equal to the simple type name
+      * of the other, or to the name of any type declared in the other, regardless of context.
+      * The declared types include any further top-level types of the other source, such as
+      * a package-private class beside its public one, and nested types.  This overestimates
+      * the references, which is safe.
+      */
+    private static List<List<String>> componentsInOrder( final List<String> sourceNames ) {
+        final int n = sourceNames.size();
+        final Map<String,Set<Integer>> sourcesByTypeName = new HashMap<>();
+        final List<Set<String>> identifiersBySource = new ArrayList<>( n );
+        for( int s = 0; s < n; ++s ) {
+            final Path sourceFile = Path.of( sourceNames.get( s ));
+            final String text;
+            try { text = Files.readString( sourceFile, ISO_8859_1 ); }
+              // ISO 8859-1 because it decodes any byte sequence, and identifiers are mostly ASCII.
+            catch( IOException x ) { throw new Unhandled( x ); }
+            final Set<String> identifiers = new HashSet<>();
+            final Matcher m = identifierPattern.matcher( text );
+            while( m.find() ) identifiers.add( m.group() );
+            identifiersBySource.add( identifiers );
+            sourcesByTypeName.computeIfAbsent( simpleTypeName(sourceFile), _k -> new HashSet<>() )
+              .add( s );
+            final Matcher d = typeDeclarationPattern.matcher( text );
+            while( d.find() ) {
+                sourcesByTypeName.computeIfAbsent( d.group(1), _k -> new HashSet<>() ).add( s ); }}
+        final int[][] references = new int[n][];
+        for( int s = 0; s < n; ++s ) {
+            final Set<Integer> rr = new HashSet<>();
+            for( final String i: identifiersBySource.get( s )) {
+                final Set<Integer> tt = sourcesByTypeName.get( i );
+                if( tt != null ) for( final int t: tt ) if( t != s ) rr.add( t ); }
+            references[s] = rr.stream().mapToInt(Integer::intValue).toArray(); }
+
+      // Find the components (Tarjan, iteratively)
+      // ───────────────────
+        final List<List<String>> components = new ArrayList<>(); // Each after those it refers to.
+        final int[] index = new int[n];
+        Arrays.fill( index, -1 );
+        final int[] low = new int[n];
+        final int[] nextReference = new int[n];
+        final boolean[] isStacked = new boolean[n];
+        final Deque<Integer> stack = new ArrayDeque<>();
+        final Deque<Integer> path = new ArrayDeque<>(); // In place of a recursive call stack.
+        int indexNext = 0;
+        for( int root = 0; root < n; ++root ) {
+            if( index[root] >= 0 ) continue;
+            index[root] = low[root] = indexNext++;
+            stack.push( root );
+            isStacked[root] = true;
+            path.push( root );
+            while( !path.isEmpty() ) {
+                final int s = path.peek();
+                if( nextReference[s] < references[s].length ) {
+                    final int t = references[s][nextReference[s]++];
+                    if( index[t] < 0 ) {
+                        index[t] = low[t] = indexNext++;
+                        stack.push( t );
+                        isStacked[t] = true;
+                        path.push( t ); }
+                    else if( isStacked[t] ) low[s] = Math.min( low[s], index[t] ); }
+                else {
+                    path.pop();
+                    if( !path.isEmpty() ) low[path.peek()] = Math.min( low[path.peek()], low[s] );
+                    if( low[s] == index[s] ) {
+                        final List<String> component = new ArrayList<>();
+                        int t;
+                        do {
+                            t = stack.pop();
+                            isStacked[t] = false;
+                            component.add( sourceNames.get( t )); }
+                        while( t != s );
+                        components.add( component ); }}}}
+        return components; }
+
+
+
+    private static final Pattern identifierPattern = Pattern.compile(
+      "\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*" );
+
+
+
+    /** A pattern that matches a type declaration, capturing the name of the type.  It matches also
+      * any lookalike in comments and strings, which is harmless.
+      */
+    private static final Pattern typeDeclarationPattern = Pattern.compile(
+      "(?<![\\p{javaJavaIdentifierPart}.])(?:class|enum|interface|record)\\s+"
+      + "(\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*)" );
+
+
+
+   // ▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀
+
+
+    /** An estimate of the resident memory the compiler uses per source file of a project,
+      * apart from its {@linkplain #compilerFootprint footprint}.
+      */
+    private static final class Estimate {
+
+
+        /** @param file The file in which the estimate is stored between builds.
+          */
+        Estimate( final Path file ) {
+            this.file = file;
+            long b = 0;
+            try { b = Long.parseLong( Files.readString( file ).trim() ); }
+            catch( NoSuchFileException x ) {} // No estimate yet for this project.
+            catch( IOException x ) { throw new Unhandled( x ); }
+            catch( NumberFormatException x ) {} // Corrupt, so start afresh.
+            bytesPerSource = b; }
+
+
+        /** The maximum number of sources to compile in a batch.
+          */
+        synchronized int batchLimit( final long memoryBudget ) {
+            final long b = bytesPerSource == 0 ? bytesPerSourceDefault : bytesPerSource;
+            return (int)Math.max( 1, Math.min( Integer.MAX_VALUE,
+              (memoryBudget - compilerFootprint) / b )); }
+
+
+        /** Estimate in bytes, or zero if none has yet been made.
+          */
+        private long bytesPerSource;
+
+
+        /** A conservative estimate for want of measurements.
+          */
+        private static final long bytesPerSourceDefault = 1024 * 1024;
+
+
+        /** The least estimate allowed.  Measurements on small batches are dominated by the footprint
+          * of the compiler, and might otherwise give an estimate too small for larger batches.
+          */
+        private static final long bytesPerSourceMinimum = 64 * 1024;
+
+
+        private final Path file;
+
+
+        /** Revises the estimate in light of a measurement.
+          */
+        synchronized void learn( long b ) {
+            b = Math.max( b, bytesPerSourceMinimum );
+            bytesPerSource = bytesPerSource == 0 ? b : (bytesPerSource + b) / 2; }
+
+
+        synchronized void write() {
+            if( bytesPerSource == 0 ) return; // Nothing was measured.
+            try {
+                Files.createDirectories( file.getParent() );
+                Files.writeString( file, Long.toString( bytesPerSource )); }
+            catch( IOException x ) { throw new Unhandled( x ); }}}}
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
@@ -4,7 +4,12 @@ package building.Makeshift;
 
 import java.io.*;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -36,22 +41,89 @@ public class Bootstrap {
 
     /** Appends to `names` the proper path of each `.java` file of `directory` that a) tests true
       * with `tester` and b) needs to be compiled or recompiled.  Does not descend into subdirectories.
+      * Deletes the class files of any source since removed from `directory`.
       *
+      *     @see OutputRecord
       *     @see #compile(List)
       */
     public static void addCompilableSource( final List<String> names, final Path directory,
           final Predicate<Path> tester ) {
+        addCompilableSource( names, directory, tester, null ); }
+
+
+
+    /** Appends to `names` the proper path of each `.java` file of `directory` that a) tests true
+      * with `tester` and b) needs to be compiled or recompiled, or regardless of need if a `forcingReason`
+      * is given.  Does not descend into subdirectories.  Deletes the class files of any source since
+      * removed from `directory`.
+      *
+      *     @param forcingReason The reason to compile every source that tests true, or null if there
+      *       is none.
+      *     @see OutputRecord
+      *     @see #compile(List)
+      */
+    public static void addCompilableSource( final List<String> names, final Path directory,
+          final Predicate<Path> tester, final RebuildRecord.Reason forcingReason ) {
+        addBuildInput( directory ); // Before listing it, lest a concurrent change go unrecorded.
+        final Set<String> sourcesPresent = new HashSet<>();
         try( final Stream<Path> pp = Files.list( directory )) {
             for( final Path p: (Iterable<Path>)pp::iterator ) {
                 if( Files.isDirectory( p )) continue;
                 final String name = p.toString();
                 if( !name.endsWith( ".java" )) continue;
+                sourcesPresent.add( p.getFileName().toString() );
                 if( !tester.test( p )) continue;
-                if( toCompile( p, simpleTypeName(p) )) names.add( name ); }}
+                if( forcingReason == null ) {
+                    if( toCompile( p, simpleTypeName(p) )) names.add( name ); }
+                else {
+                    addBuildInput( p );
+                    RebuildRecord.decide( p, forcingReason, "" );
+                    names.add( name ); }}}
+        catch( IOException x ) { throw new Unhandled( x ); }
+        OutputRecord.prune( directory, sourcesPresent ); }
+
+
+
+    /** Records the present state of `path` as an input to the present build, a file or directory
+      * on whose state the outcome of the build depends.  The record goes to the build journal
+      * written by `bin/build` after a successful build.  If `path` was recorded already,
+      * then the earlier record stands.
+      *
+      *     @param path The proper path of a file or directory.
+      *     @see #buildInputs()
+      */
+    public static void addBuildInput( final Path path ) {
+        if( buildInputs.containsKey( path )) return;
+        try { buildInputs.putIfAbsent( path, getLastModifiedTime( path )); }
         catch( IOException x ) { throw new Unhandled( x ); }}
 
 
 
+    /** The inputs to the present build, each mapped to its time of last modification as recorded.
+      *
+      *     @see #addBuildInput(Path)
+      */
+    public static Map<Path,FileTime> buildInputs() { return buildInputsUnmodifiable; }
+
+
+        private static final Map<Path,FileTime> buildInputs = new ConcurrentHashMap<>();
+
+
+        private static final Map<Path,FileTime> buildInputsUnmodifiable =
+          Collections.unmodifiableMap( buildInputs );
+
+
+
+    /** Gives the class named `name`, loading it if necessary by the context class loader of the present
+      * thread.  Use this in place of `Class.forName` to load building code compiled during the build,
+      * which the class loader of Makeshift itself may be unable to see, as when Makeshift is loaded
+      * from the launcher archive of `bin/build_fast`.
+      */
+    public static Class<?> classForName( final String name ) throws ClassNotFoundException {
+        return Class.forName( name, true, Thread.currentThread().getContextClassLoader() ); }
+
+
+
     /** Compiles Java source code to class files.
       *
       *     @param projectPackage The proper package of the project whose source code is being compiled,
@@ -76,39 +148,99 @@ public class Bootstrap {
       */
     public static void compile( final String projectPackage, final List<String> sourceNames,
           final List<String> additionalArguments ) throws UserError {
+        compile( projectPackage, sourceNames, additionalArguments, null ); }
+
+
+
+    /** Compiles Java source code to class files.
+      *
+      *     @param projectPackage The proper package of the project whose source code is being compiled,
+      *       or null if the builder builder is being compiled.
+      *     @param sourceNames The proper path of each source file to compile.
+      *     @param additionalArguments Additional arguments for `javac`.  These will be inserted
+      *       before the given source names.
+      *     @param peakMemoryReceiver A receiver of the peak resident memory of the compiler in bytes,
+      *       called on successful compilation where the compiler runs in a process of its own
+      *       and the runtime platform allows its memory to be measured; or null if none is wanted.
+      *     @see <a href='https://docs.oracle.com/en/java/javase/15/docs/specs/man/javac.html#synopsis'>
+      *       Synopsis of `javac`</a>
+      */
+    public static void compile( final String projectPackage, final List<String> sourceNames,
+          final List<String> additionalArguments, final LongConsumer peakMemoryReceiver )
+          throws UserError {
         // Changing?  Sync → `run` @ `bin/build`.
-        printProgressLeader( projectPackage, "javac" );
-        final List<String> compilerArguments = new ArrayList<>();
-        compilerArguments.add( System.getProperty("java.home") + "/bin/javac" );
-          // The Java installation at `java.home` is known to include `javac` because also
-          // it is a JDK installation, as assured by the `JDK_HOME` atop `bin/build`.
-        compilerArguments.add( "@building/Makeshift/java_javac_arguments" );
-        compilerArguments.add( "@building/Makeshift/javac_arguments" );
-        compilerArguments.addAll( additionalArguments );
-        compilerArguments.addAll( sourceNames );
-        final ProcessBuilder pB = new ProcessBuilder( compilerArguments );
-        pB.redirectErrorStream( true );
+        final List<String> javacArguments = new ArrayList<>();
+        javacArguments.add( "@building/Makeshift/java_javac_arguments" );
+        javacArguments.add( "@building/Makeshift/javac_arguments" );
+        javacArguments.addAll( additionalArguments );
+        javacArguments.addAll( sourceNames );
+        final List<String> profileArguments = JavacWorkers.isEnabled ? List.of()
+          : JavacProfile.arguments( sourceNames.size() );
         final StringBuilder capture = new StringBuilder(); // E.g. of compiler warnings or errors.
+        boolean isCancelled = false;
+        boolean isSuccessful = false;
+        Process p = null;
+        PeakMemorySampler sampler = null;
+        final FileTime compileStart = FileTime.from( // Truncated to allow for coarse file times.
+          Instant.now().minusSeconds(1).truncatedTo( ChronoUnit.SECONDS ));
+        final long compileStartNanos = System.nanoTime();
+        final boolean isConcurrent = WorkGroup.isConcurrencyPossible(); /* If so, then print
+          the progress message whole at the end, lest concurrent work garble it.  Else print
+          its leader up front, so showing what is underway during a long compilation. */
+        if( !isConcurrent ) printProgressLeader( projectPackage, "javac" );
         try {
-            final Process p = pB.start();
-            appendAll( p, capture );
-            final int exitValue =  p.waitFor();
+            if( Thread.interrupted() ) throw new InterruptedException(); // Cancelled before starting.
+            final int exitValue;
+            if( JavacWorkers.isEnabled ) { // Then compile on a worker, whose memory use goes unmeasured.
+                final JavacWorkers.Result r = JavacWorkers.compile( javacArguments );
+                capture.append( r.output );
+                exitValue = r.exitValue; }
+            else {
+                final List<String> compilerArguments = new ArrayList<>();
+                compilerArguments.add( System.getProperty("java.home") + "/bin/javac" );
+                  // The Java installation at `java.home` is known to include `javac` because also
+                  // it is a JDK installation, as assured by the `JDK_HOME` atop `bin/build`.
+                compilerArguments.addAll( profileArguments );
+                compilerArguments.addAll( javacArguments );
+                final ProcessBuilder pB = new ProcessBuilder( compilerArguments );
+                pB.redirectErrorStream( true );
+                p = WorkGroup.register( pB.start() );
+                if( peakMemoryReceiver != null ) sampler = new PeakMemorySampler( p );
+                appendAll( p, capture ); // Returning early if `p` is destroyed on cancellation.
+                exitValue =  p.waitFor();
+                if( Thread.interrupted() ) throw new InterruptedException(); } // `p` was likely destroyed.
             if( exitValue == 1 ) throw new UserError( "Stopped on `javac` error" );
               // Already `javac` has told the details.
             else if( exitValue != 0 ) throw new Unhandled( "Exit value of " + exitValue
-              + " from process: " + pB.command() ); }
-        catch( final InterruptedException x ) {
+              + " from `javac` with arguments: " + javacArguments );
+            isSuccessful = true;
+            OutputRecord.update( sourceNames, compileStart );
+            RebuildRecord.compiled( projectPackage, sourceNames, System.nanoTime() - compileStartNanos );
+            if( sampler != null ) {
+                sampler.join();
+                if( sampler.peak > 0 ) peakMemoryReceiver.accept( sampler.peak ); }}
+        catch( final InterruptedException x ) { /* The source is either the user, as explained
+              at `bin/build`, or the cancellation of a `WorkGroup` on the failure of sibling work. */
+            isCancelled = true;
+            if( p != null ) p.destroyForcibly();
             Thread.currentThread().interrupt(); // Avoid hiding the fact of interruption.
-            throw new Unhandled( x ); } // Q.v. at `bin/build` for the reason.
-        catch( IOException x ) { throw new Unhandled( x ); }
+            throw new Unhandled( x ); }
+        catch( IOException x ) {
+            isCancelled = Thread.currentThread().isInterrupted(); // Then likely it was destroyed.
+            throw new Unhandled( x ); }
         finally {
+            JavacProfile.end( profileArguments, isSuccessful );
             final var o = System.out;
-            o.print( sourceNames.size() );
-            if( capture.length() > 0 ) {
-                o.println( " …" ); // Indicating the intent of compiling so many, as opposed to the fact.
-                o.print( capture.toString() );
-                o.flush(); }
-            else o.println(); }}
+            synchronized( o ) {
+                if( isConcurrent ) printProgressLeader( projectPackage, "javac" );
+                o.print( sourceNames.size() );
+                if( isCancelled ) o.println( " … cancelled" ); // Partial output would only mislead.
+                else if( capture.length() > 0 ) {
+                    o.println( " …" ); /* Indicating the intent of compiling so many,
+                      as opposed to the fact. */
+                    o.print( capture.toString() );
+                    o.flush(); }
+                else o.println(); }}}
 
 
 
@@ -153,20 +285,24 @@ public class Bootstrap {
 
     /** Prints and flushes through standard output the beginning of a message of incremental build
       * progress.  Be sure to print the remainder of the message and terminate it with a newline.
+      * Where build work may run concurrently, hold the monitor of `System.out` from before calling
+      * this method until after terminating the message.
       *
       *     @param projectPackage The proper package of the project whose software is being built,
       *       or null if the builder builder itself is being built.
       *     @param type A short name to identify the type of progress.
+      *     @see WorkGroup
       */
     public static void printProgressLeader( final String projectPackage, final String type ) {
-        if( !Objects.equals( projectShowingProgress, projectPackage )) {
-            projectShowingProgress = projectPackage;
-            System.out.println( projectPackage == null ?
-              "building.Makeshift (bootstrap)" : projectPackage ); }
-        System.out.print( "    " );
-        System.out.print( type );
-        System.out.print( ' ' );
-        System.out.flush(); }
+        final var o = System.out;
+        synchronized( o ) {
+            if( !Objects.equals( projectShowingProgress, projectPackage )) {
+                projectShowingProgress = projectPackage;
+                o.println( projectPackage == null ? "building.Makeshift (bootstrap)" : projectPackage ); }
+            o.print( "    " );
+            o.print( type );
+            o.print( ' ' );
+            o.flush(); }}
 
 
 
@@ -197,12 +333,18 @@ public class Bootstrap {
       *     @param simpleTypeName The corresponding {@linkplain #simpleTypeName(Path) simple type name}.
       */
     public static boolean toCompile( final Path sourceFile, final String simpleTypeName ) {
+        addBuildInput( sourceFile );
         final Path classFile = outDirectory.resolve(
           sourceFile.resolveSibling( simpleTypeName + ".class" ));
         if( Files.exists( classFile )) {
             try {
-                return getLastModifiedTime(sourceFile).compareTo(getLastModifiedTime(classFile)) >= 0; }
+                final FileTime sourceTime = buildInputs.get( sourceFile );
+                final FileTime classTime = getLastModifiedTime( classFile );
+                if( sourceTime.compareTo(classTime) < 0 ) return false;
+                RebuildRecord.decideStale( sourceFile, sourceTime, classTime );
+                return true; }
             catch( IOException x ) { throw new Unhandled( x ); }}
+        RebuildRecord.decide( sourceFile, RebuildRecord.Reason.missingOutput, classFile.toString() );
         return true; }
 
 
@@ -317,7 +459,45 @@ public class Bootstrap {
 
 
 
-    /** Proper package of the last project to show progress.
+    /** A sampler of the peak resident memory of a process, which runs until the process ends.
+      * It reads the high-water mark from the Linux `proc` file system, where available.
+      */
+    private static final class PeakMemorySampler extends Thread {
+
+
+        PeakMemorySampler( final Process process ) {
+            this.process = process;
+            statusFile = Path.of( "/proc", Long.toString(process.pid()), "status" );
+            setDaemon( true );
+            start(); }
+
+
+        /** The greatest high-water mark sampled, in bytes, or zero if none was sampled.
+          */
+        volatile long peak;
+
+
+        private final Process process;
+
+
+        public @Override void run() {
+            try {
+                while( process.isAlive() ) {
+                    for( final String line: Files.readAllLines( statusFile )) {
+                        if( !line.startsWith( "VmHWM:" )) continue;
+                        final long p = 1024L * Long.parseLong( // From a value in kB.
+                          line.substring("VmHWM:".length(),line.length()-"kB".length()).trim() );
+                        if( p > peak ) peak = p;
+                        break; }
+                    Thread.sleep( 20/*ms*/ ); }}
+            catch( IOException|InterruptedException x ) {}} // The process has ended, or is unsampleable.
+
+
+        private final Path statusFile; }
+
+
+
+    /** Proper package of the last project to show progress.  Guarded by the monitor of `System.out`.
       */
     private static String projectShowingProgress = /*none yet*/""; }
 
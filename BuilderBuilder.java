@@ -8,6 +8,7 @@ import java.util.*;
 import java.util.function.Predicate;
 
 import static building.Makeshift.Bootstrap.addCompilableSource;
+import static building.Makeshift.Bootstrap.classForName;
 import static building.Makeshift.Bootstrap.packageOf;
 import static building.Makeshift.Bootstrap.pathOf;
 import static building.Makeshift.Bootstrap.pathTester_true;
@@ -24,10 +25,21 @@ import static building.Makeshift.Bootstrap.UserError;
   * It must depend on no code outside of:
   *
   * <ul><li>The standard libraries</li>
+  *     <li>`{@linkplain ArchiveClassLoader    ArchiveClassLoader}`</li>
   *     <li>`{@linkplain Bootstrap             Bootstrap}`</li>
   *     <li>`{@linkplain Builder               Builder}`</li>
   *     <li>                                  `BuilderBuilder` (the present interface)</li>
-  *     <li>`{@linkplain BuilderBuilderDefault BuilderBuilderDefault}`</li></ul>
+  *     <li>`{@linkplain BuilderBuilderDefault BuilderBuilderDefault}`</li>
+  *     <li>`{@linkplain ClassArchive          ClassArchive}`</li>
+  *     <li>`{@linkplain ClassFile             ClassFile}`</li>
+  *     <li>`{@linkplain CompilePipeline       CompilePipeline}`</li>
+  *     <li>`{@linkplain HeaderCompiler        HeaderCompiler}`</li>
+  *     <li>`{@linkplain JavacProfile          JavacProfile}`</li>
+  *     <li>`{@linkplain JavacWorker           JavacWorker}`</li>
+  *     <li>`{@linkplain JavacWorkers          JavacWorkers}`</li>
+  *     <li>`{@linkplain OutputRecord          OutputRecord}`</li>
+  *     <li>`{@linkplain RebuildRecord         RebuildRecord}`</li>
+  *     <li>`{@linkplain WorkGroup             WorkGroup}`</li></ul>
   */// Changing the above?  Sync → stage 1 of `run` in `bin/build`.
 public interface BuilderBuilder {
 
@@ -49,7 +61,9 @@ public interface BuilderBuilder {
 
     /** Compiles the code of the software builder, including any
       * {@linkplain #externalBuildingCode() external building code} on which it depends,
-      * and prepares it for use.
+      * and prepares it for use.  The external building code may compile in the background by way
+      * of {@linkplain HeaderCompiler header compilation}, but all compilation is complete
+      * by the time the outermost call to this method returns.
       *
       * <p>To get an instance of the builder once built, use {@linkplain #newBuilder() newBuilder}.</p>
       *
@@ -58,24 +72,43 @@ public interface BuilderBuilder {
     public default void build() throws UserError {
         final String owningProject = projectPackage();
         if( projectsUnderBuild.contains( owningProject )) throw new IllegalStateException();
+        final boolean isOutermost = projectsUnderBuild.isEmpty(); // That of the builder requested.
         projectsUnderBuild.add( owningProject );
+        try {
 
-      // Build the external building code
-      // ────────────────────────────────
-        for( final String externalProject: externalBuildingCode() ) { /* Iteration order is unimportant;
-              regardless projects will build here in correct order.  Makeshift, for instance,
-              will always build before any other project that nominally depends on it. */
-            if( projectsUnderBuild.contains( externalProject )) continue;
-            forPackage(externalProject).build(); }
-
-      // Compile the project’s own building code
-      // ───────────────────────────────────────
-        final List<String> sourceNames = new ArrayList<>();
-        final Predicate<Path> tester = targetFile().getFileName().toString().equals( "Target.java" ) ?
-          pathTester_true : p -> p.getFileName().toString().startsWith("Build");
-        addCompilableSource( sourceNames, internalBuildingCode(projectPath()), tester );
-        addedBuildingCode().forEach( pkg -> addCompilableSource( sourceNames, pathOf(pkg) ));
-        if( sourceNames.size() > 0 ) Bootstrap.compile( owningProject, sourceNames ); }
+          // Build the external building code
+          // ────────────────────────────────
+            for( final String externalProject: externalBuildingCode() ) { /* Iteration order is
+                  unimportant; regardless projects will build here in correct order.  Makeshift,
+                  for instance, will always build before any other project that nominally depends
+                  on it. */
+                if( projectsUnderBuild.contains( externalProject )) continue;
+                forPackage(externalProject).build(); }
+
+          // Compile the project’s own building code
+          // ───────────────────────────────────────
+            final Predicate<Path> tester = this::isBuildingCode;
+            final CompilePipeline.Compiler compiler = sourceNames -> {
+                RebuildRecord.buildingCodeCompiling( owningProject, externalBuildingCode() );
+                if( isOutermost ) { // Then nothing downstream awaits it.
+                    Bootstrap.compile( owningProject, sourceNames,
+                      HeaderCompiler.classPathArguments() ); }
+                else HeaderCompiler.compile( owningProject, sourceNames ); };
+            if( CompilePipeline.isEnabled ) {
+                final Map<Path,Predicate<Path>> directories = new LinkedHashMap<>();
+                directories.put( internalBuildingCode(projectPath()), tester );
+                addedBuildingCode().forEach( pkg -> directories.merge( pathOf(pkg), pathTester_true,
+                  Predicate::or )); // Widening the tester for any package of internal building code.
+                CompilePipeline.compile( directories, null, compiler ); }
+            else {
+                final List<String> sourceNames = new ArrayList<>();
+                addCompilableSource( sourceNames, internalBuildingCode(projectPath()), tester );
+                addedBuildingCode().forEach( pkg -> addCompilableSource( sourceNames, pathOf(pkg) ));
+                if( sourceNames.size() > 0 ) compiler.compile( sourceNames ); }
+            if( isOutermost ) HeaderCompiler.awaitFullCompilation(); }
+        catch( UserError|RuntimeException x ) {
+            if( isOutermost ) HeaderCompiler.cancelFullCompilation();
+            throw x; }}
 
 
 
@@ -156,14 +189,30 @@ public interface BuilderBuilder {
 
 
 
+    /** Answers whether a source file is building code of the owning project, whether internal
+      * or {@linkplain #addedBuildingCode() added}.
+      *
+      *     @param sourceFile The proper path of a source file.
+      *     @see #internalBuildingCode(Path)
+      */
+    public default boolean isBuildingCode( final Path sourceFile ) {
+        final Path directory = sourceFile.getParent();
+        if( directory == null ) return false;
+        if( directory.equals( internalBuildingCode( projectPath() ))
+          && (targetFile().getFileName().toString().equals( "Target.java" )
+            || sourceFile.getFileName().toString().startsWith( "Build" ))) return true;
+        return addedBuildingCode().contains( packageOf( directory )); }
+
+
+
     /** Makes an instance of the software builder, once {@linkplain #build() built}.
       */
     public default Builder newBuilder() {
         try {
             final Class<? extends Builder> cBuilder =
-              Class.forName( typeName( Builder.implementationFile( projectPath() )))
+              classForName( typeName( Builder.implementationFile( projectPath() )))
               .asSubclass( Builder.class );
-            final Class<?> cTarget = Class.forName( typeName( targetFile() )).asSubclass( Enum.class );
+            final Class<?> cTarget = classForName( typeName( targetFile() )).asSubclass( Enum.class );
             try { // Either (a) the default implementation `BuilderDefault`, or (b) a custom one:
                 return cBuilder.getConstructor( Class.class, String.class, Path.class ) // (a)
                   .newInstance( cTarget, projectPackage(), projectPath() ); }
@@ -226,7 +275,7 @@ public interface BuilderBuilder {
       // ─────────────────────
         final String cName = packageOf(iDirectory) + '.' + iSimpleTypeName;
         try {
-            final Class<? extends BuilderBuilder> c = Class.forName( cName )
+            final Class<? extends BuilderBuilder> c = classForName( cName )
               .asSubclass( BuilderBuilder.class );
             try { // Either (a) the default implementation `BuilderBuilderDefault`, or (b) a custom one:
                 return c.getConstructor( String.class, Path.class ) // (a)
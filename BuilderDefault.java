@@ -4,6 +4,7 @@ package building.Makeshift;
 
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Predicate;
 
 import static building.Makeshift.Project.UserError;
 import static building.Makeshift.Project.pathOf;
@@ -58,7 +59,9 @@ public class BuilderDefault<T extends Enum<T>> implements Builder {
       * of the owning project.</p>
       *
       * <p>This method is not called unless the project declares build target
-      * `{@linkplain building.Makeshift.template.BuildTarget.Java_class_files Java_class_files}`.</p>
+      * `{@linkplain building.Makeshift.template.BuildTarget.Java_class_files Java_class_files}`,
+      * `{@linkplain building.Makeshift.template.BuildTarget.Java_resources Java_resources}`
+      * or `{@linkplain building.Makeshift.template.BuildTarget.Java_shrunk_jar Java_shrunk_jar}`.</p>
       */
     public Set<String> JavaCode() { return Set.of( projectPackage ); } /* Packages for elements
       because they are codeable by implementers as cross-platform literals, whereas paths are not. */
@@ -105,6 +108,8 @@ public class BuilderDefault<T extends Enum<T>> implements Builder {
         switch( target ) {
             case "builder"          -> {} // Nothing to do, already this builder is built.
             case "Java_class_files" -> buildTo_Java_class_files();
+            case "Java_resources"   -> buildTo_Java_resources();
+            case "Java_shrunk_jar"  -> buildTo_Java_shrunk_jar();
             default -> {
                 assert !isSupportDeclared( target );
                 throw new IllegalArgumentException(); }}
@@ -114,16 +119,83 @@ public class BuilderDefault<T extends Enum<T>> implements Builder {
 
     /** @see building.Makeshift.template.BuildTarget.Java_class_files
       * @see #javacArguments()
+      * @see CompilePipeline
       */
     private void buildTo_Java_class_files() throws UserError {
-        final List<String> sourceNames = new ArrayList<>();
-        JavaCode().forEach( pkg -> Project.addCompilableSource( sourceNames, pathOf(pkg) ));
-        if( sourceNames.size() > 0 ) {
-            Project.compile( projectPackage, sourceNames, javacArguments() ); }}
+        final List<String> arguments = javacArguments();
+        final RebuildRecord.Reason forcingReason = RebuildRecord.isArgumentChange(
+          projectPackage, arguments ) ? RebuildRecord.Reason.argumentChange : null;
+        final long memoryBudget = javacMemoryBudget();
+        if( CompilePipeline.isEnabled ) {
+            final Map<Path,Predicate<Path>> directories = new LinkedHashMap<>();
+            JavaCode().forEach( pkg -> directories.put( pathOf(pkg), Project.pathTester_true ));
+            CompilePipeline.compile( directories, forcingReason, sourceNames ->
+              BatchCompiler.compile( projectPackage, sourceNames, arguments, memoryBudget )); }
+        else {
+            final List<String> sourceNames = new ArrayList<>();
+            JavaCode().forEach( pkg -> Project.addCompilableSource( sourceNames, pathOf(pkg),
+              Project.pathTester_true, forcingReason ));
+            if( sourceNames.size() > 0 ) {
+                BatchCompiler.compile( projectPackage, sourceNames, arguments, memoryBudget ); }}
+        RebuildRecord.recordArguments( projectPackage, arguments ); }
+
+
+
+    /** @see building.Makeshift.template.BuildTarget.Java_resources
+      * @see #isJavaResource(Path)
+      */
+    private void buildTo_Java_resources() throws UserError {
+        final List<Path> directories = new ArrayList<>();
+        JavaCode().forEach( pkg -> directories.add( pathOf( pkg )));
+        ResourceCopier.copy( projectPackage, directories, this::isJavaResource ); }
+
+
+
+    /** @see building.Makeshift.template.BuildTarget.Java_shrunk_jar
+      * @see #entryPoints()
+      */
+    private void buildTo_Java_shrunk_jar() throws UserError {
+        buildTo_Java_class_files();
+        for( final T t: targetClass.getEnumConstants() ) {
+            if( t.name().equals( "Java_resources" )) buildTo_Java_resources(); }
+        final Set<String> entryPoints = entryPoints();
+        if( entryPoints.isEmpty() ) {
+            throw new UserError( "No entry points for target `Java_shrunk_jar`: the builder of "
+              + projectPackage + " must override `entryPoints`" ); }
+        final List<Path> directories = new ArrayList<>();
+        JavaCode().forEach( pkg -> directories.add( pathOf( pkg )));
+        Shrinker.shrink( projectPackage, directories, entryPoints,
+          BuilderBuilder.forPath(projectPath)::isBuildingCode ); }
+
+
+
+    /** The binary name of each class from which the classes of the shrunk jar are reachable,
+      * such as that of a class with a `main` method.  Where there is just one such class and it has
+      * a `main` method, the jar names it as its main class.  The default implementation is an empty set.
+      *
+      *     @see building.Makeshift.template.BuildTarget.Java_shrunk_jar
+      *     @see Shrinker
+      */
+    protected Set<String> entryPoints() { return Set.of(); }
+
+
+
+    /** Answers whether `file` is a resource file, to be copied alongside the Java class files.
+      * The default implementation answers true for all files except Java source files and hidden files,
+      * the latter having names that begin with a period.
+      *
+      *     @param file The proper path of a file in one of the {@linkplain #JavaCode() packages of Java
+      *       code}.
+      *     @see building.Makeshift.template.BuildTarget.Java_resources
+      */
+    protected boolean isJavaResource( final Path file ) {
+        final String name = file.getFileName().toString();
+        return !name.endsWith( ".java" ) && !name.startsWith( "." ); }
 
 
 
-    /** Additional arguments for the Java compiler.  The default implementation is an empty list.
+    /** Additional arguments for the Java compiler.  A change to these forces the recompilation
+      * of all the Java code.  The default implementation is an empty list.
       *
       *     @see building.Makeshift.template.BuildTarget.Java_class_files
       */
@@ -131,6 +203,33 @@ public class BuilderDefault<T extends Enum<T>> implements Builder {
 
 
 
+    /** The most resident memory in bytes that the Java compiler should use, or zero for no limit.
+      * Given a limit, the compiler is run in {@linkplain BatchCompiler batches} sized to fit.
+      * The default implementation takes the value of system property
+      * `building.Makeshift.javacMemoryBudget`, a number of bytes optionally suffixed by ‘k’, ‘m’ or ‘g’
+      * as for `-Xmx`; or zero if the property is undefined.
+      *
+      *     @throws UserError If the property is defined, but not as a number of bytes
+      *       from zero to `Long.MAX_VALUE`.
+      *     @see building.Makeshift.template.BuildTarget.Java_class_files
+      *     @see <a href='../java_arguments_addendum'>`java_arguments_addendum`</a>
+      */
+    protected long javacMemoryBudget() throws UserError {
+        final String name = "building.Makeshift.javacMemoryBudget";
+        final String p = System.getProperty( name );
+        if( p == null ) return 0;
+        final String s = p.trim().toLowerCase();
+        final int unit = "kmg".indexOf( s.isEmpty() ? ' ' : s.charAt( s.length() - 1 ));
+        final int shift = 10 * (unit + 1);
+        try {
+            final long n = Long.parseLong( unit < 0 ? s : s.substring( 0, s.length() - 1 ));
+            if( n >= 0 && n <= Long.MAX_VALUE >> shift ) return n << shift; }
+        catch( NumberFormatException x ) {}
+        throw new UserError( "Not a number of bytes from zero to " + Long.MAX_VALUE + ": -D" + name
+          + "=" + p ); }
+
+
+
     private static boolean isSupportDeclared( final String target ) {
         boolean is = true;
         try { building.Makeshift.template.BuildTarget.valueOf( target ); }
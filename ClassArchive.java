@@ -0,0 +1,237 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static building.Makeshift.Bootstrap.Unhandled;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+
+/** An indexed archive of the class files of a package, which serves them from memory by mapping
+  * the archive file.  The archive is kept in the output directory of the package, in a file named
+  * `.classes`, and is synchronized with the class files after each compilation that outputs
+  * to the package.  It grows by appending, the class files that changed followed by a new index,
+  * until much of it is obsolete, then it is rewritten whole.
+  *
+  * <p>Each synchronization leaves the archive file last modified no earlier than its directory.
+  * An archive found to be older than its directory is therefore out of date, as when a class file
+  * was added or deleted other than by way of `OutputRecord`, and reading it first synchronizes it.
+  * So freshness is checked once per reading, rather than once per class.  A class file rewritten
+  * in place, however, leaves its directory unchanged, and goes undetected till the next
+  * synchronization; the archive is then authoritative.</p>
+  *
+  *     @see ArchiveClassLoader
+  */
+public final class ClassArchive {
+
+
+    private ClassArchive( final ByteBuffer buffer, final Map<String,long[]> index ) {
+        this.buffer = buffer;
+        this.index = index; }
+
+
+
+    /** Gives the content of the named class file as a read-only buffer positioned at its start
+      * and limited at its end, or null if the archive lacks the class.
+      *
+      *     @param simpleName The simple binary name of the class, e.g. `Toad$Wart`.
+      */
+    public ByteBuffer classFile( final String simpleName ) {
+        final long[] entry = index.get( simpleName );
+        if( entry == null ) return null;
+        return buffer.slice( (int)entry[1], (int)entry[2] ); }
+
+
+
+    /** The number of times that any archive has been synchronized in the present runtime
+      * for the given output directory.  A change in this number invalidates the mapping
+      * of any archive read from the directory beforehand.
+      */
+    public static long generation( final Path outputDirectory ) {
+        return generations.getOrDefault( outputDirectory, 0L ); }
+
+
+
+    /** Maps the archive of the given output directory into memory, first synchronizing it
+      * if it is out of date.
+      *
+      *     @return The archive, or null if the directory has no usable archive.
+      */
+    public static ClassArchive read( final Path outputDirectory ) {
+        final Path file = outputDirectory.resolve( ".classes" );
+        try {
+            final FileTime t = Files.getLastModifiedTime( file );
+            if( Files.getLastModifiedTime( outputDirectory ).compareTo( t ) > 0 ) sync( outputDirectory ); }
+        catch( NoSuchFileException x ) { return null; }
+        catch( IOException x ) { throw new Unhandled( x ); }
+        return map( outputDirectory ); }
+
+
+
+    /** Synchronizes the archive of the given output directory with the class files it contains,
+      * archiving any that are new or changed and dropping any that were deleted.
+      */
+    public static void sync( final Path outputDirectory ) {
+        final Path file = outputDirectory.resolve( ".classes" );
+        synchronized( ClassArchive.class ) {
+            final ClassArchive old = map( outputDirectory );
+            final Map<String,long[]> index = new HashMap<>(); // Of the class files present.
+            final List<String> changed = new ArrayList<>();
+            boolean isChanged = old == null;
+            try( final Stream<Path> pp = Files.list( outputDirectory )) {
+                for( final Path p: (Iterable<Path>)pp::iterator ) {
+                    final String f = p.getFileName().toString();
+                    if( !f.endsWith( ".class" )) continue;
+                    final String name = f.substring( 0, f.length() - ".class".length() );
+                    final BasicFileAttributes a = Files.readAttributes( p, BasicFileAttributes.class );
+                    final long time = a.lastModifiedTime().toMillis();
+                    final long[] oldEntry = old == null ? null : old.index.get( name );
+                    if( oldEntry != null && oldEntry[0] == time && oldEntry[2] == a.size() ) {
+                        index.put( name, oldEntry ); }
+                    else {
+                        index.put( name, new long[] { time, -1, a.size() });
+                        changed.add( name );
+                        isChanged = true; }}}
+            catch( NoSuchFileException x ) { return; } // No output went here.
+            catch( IOException x ) { throw new Unhandled( x ); }
+            if( old == null ? index.isEmpty() : !isChanged && index.size() == old.index.size() ) {
+                if( old != null ) touch( file );
+                return; }
+            long liveSize = 0;
+            for( final long[] entry: index.values() ) liveSize += entry[2];
+            try {
+                if( old == null || old.buffer.capacity() > 2 * liveSize + 4096 ) { // Rewrite whole:
+                    final Path fileNew = file.resolveSibling( ".classes.new" );
+                    try( final FileChannel c = FileChannel.open( fileNew, CREATE, TRUNCATE_EXISTING,
+                          WRITE )) {
+                        append( c, outputDirectory, index.keySet(), index ); }
+                    Files.move( fileNew, file, ATOMIC_MOVE, REPLACE_EXISTING ); }
+                else try( final FileChannel c = FileChannel.open( file, WRITE, APPEND )) {
+                    append( c, outputDirectory, changed, index ); }
+                touch( file ); } // Last, so postdating any change to the directory.
+            catch( IOException x ) { throw new Unhandled( x ); }
+            generations.merge( outputDirectory, 1L, Long::sum ); }}
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    /** Appends to `c` the class files named in `names`, then the whole of `index`, then a trailer
+      * that locates the index.  Sets the offset of each appended class file in its index entry.
+      */
+    private static void append( final FileChannel c, final Path outputDirectory,
+          final Collection<String> names, final Map<String,long[]> index ) throws IOException {
+        for( final String name: names ) {
+            final long[] entry = index.get( name );
+            final byte[] b = Files.readAllBytes( outputDirectory.resolve( name + ".class" ));
+            entry[0] = Files.getLastModifiedTime( outputDirectory.resolve( name + ".class" )).toMillis();
+            entry[1] = c.position();
+            entry[2] = b.length; // In case the file changed since it was listed.
+            write( c, ByteBuffer.wrap( b )); }
+        final long indexOffset = c.position();
+        final var bytes = new ByteArrayOutputStream();
+        final var out = new DataOutputStream( bytes );
+        out.writeInt( index.size() );
+        for( final Map.Entry<String,long[]> e: index.entrySet() ) {
+            final byte[] name = e.getKey().getBytes( UTF_8 );
+            out.writeShort( name.length );
+            out.write( name );
+            for( int i = 0; i < 2; ++i ) out.writeLong( e.getValue()[i] );
+            out.writeInt( (int)e.getValue()[2] ); }
+        out.writeLong( indexOffset ); // Trailer.
+        out.writeInt( magic );
+        write( c, ByteBuffer.wrap( bytes.toByteArray() )); }
+
+
+
+    /** The content of the archive file.
+      */
+    private final ByteBuffer buffer;
+
+
+
+    private static final Map<Path,Long> generations = new ConcurrentHashMap<>();
+
+
+
+    /** The index of the archive, mapping the simple binary name of each class to its time
+      * of last modification, offset and length.
+      */
+    private final Map<String,long[]> index;
+
+
+
+    private static final int magic = 0x4D534341; // Ending each trailer.
+
+
+
+    /** Maps the archive of the given output directory into memory, as it stands.
+      *
+      *     @return The archive, or null if the directory has no usable archive.
+      */
+    private static ClassArchive map( final Path outputDirectory ) {
+        final Path file = outputDirectory.resolve( ".classes" );
+        final ByteBuffer buffer;
+        try( final FileChannel c = FileChannel.open( file, READ )) {
+            buffer = c.map( READ_ONLY, 0, c.size() ); }
+        catch( NoSuchFileException x ) { return null; }
+        catch( IOException x ) { throw new Unhandled( x ); }
+        final Map<String,long[]> index = readIndex( buffer );
+        return index == null ? null : new ClassArchive( buffer, index ); }
+
+
+
+    /** Reads the index from `buffer`.
+      *
+      *     @return The index, or null if `buffer` is not a complete archive, as when its writing
+      *       was interrupted.
+      */
+    private static Map<String,long[]> readIndex( final ByteBuffer buffer ) {
+        final int size = buffer.capacity();
+        if( size < 12 || buffer.getInt( size - 4 ) != magic ) return null;
+        final long indexOffset = buffer.getLong( size - 12 );
+        if( indexOffset < 0 || indexOffset > size - 12 ) return null;
+        final ByteBuffer b = buffer.duplicate().position( (int)indexOffset );
+        try {
+            final int n = b.getInt();
+            final Map<String,long[]> index = new HashMap<>( 2 * n );
+            for( int i = 0; i < n; ++i ) {
+                final byte[] name = new byte[b.getShort() & 0xFFFF];
+                b.get( name );
+                final long[] entry = { b.getLong(), b.getLong(), b.getInt() };
+                if( entry[1] < 0 || entry[1] + entry[2] > indexOffset ) return null;
+                index.put( new String( name, UTF_8 ), entry ); }
+            return index; }
+        catch( RuntimeException x ) { return null; }} // Buffer underflow, or negative array size.
+
+
+
+    /** Sets the time of last modification of the given archive file to now.
+      */
+    private static void touch( final Path file ) {
+        try { Files.setLastModifiedTime( file, FileTime.from( Instant.now() )); }
+        catch( IOException x ) { throw new Unhandled( x ); }}
+
+
+
+    private static void write( final FileChannel c, final ByteBuffer b ) throws IOException {
+        while( b.hasRemaining() ) c.write( b ); }}
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
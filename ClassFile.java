@@ -0,0 +1,300 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/** A parsed Java class file, or as much of it as Makeshift needs.
+  *
+  *     @see <a href='https://docs.oracle.com/javase/specs/jvms/se15/html/jvms-4.html'>
+  *       The `class` file format</a>
+  */
+public final class ClassFile {
+
+
+    /** @param in A stream positioned at the start of the class file.
+      * @throws IOException If `in` fails, or its content is not a class file.
+      */
+    public ClassFile( final DataInputStream in ) throws IOException {
+        if( in.readInt() != 0xCAFEBABE ) throw new IOException( "Not a class file" );
+        in.readUnsignedShort(); // Minor version.
+        in.readUnsignedShort(); // Major version.
+
+      // Constant pool
+      // ─────────────
+        final int cN = in.readUnsignedShort();
+        tag = new byte[cN];
+        index1 = new int[cN];
+        index2 = new int[cN];
+        utf8 = new String[cN];
+        for( int c = 1; c < cN; ++c ) {
+            final byte t = tag[c] = in.readByte();
+            switch( t ) {
+                case CONSTANT_Utf8 -> utf8[c] = in.readUTF();
+                case CONSTANT_Integer, CONSTANT_Float -> in.readInt();
+                case CONSTANT_Long, CONSTANT_Double -> {
+                    in.readLong();
+                    ++c; } // Taking two entries.
+                case CONSTANT_Class, CONSTANT_String, CONSTANT_MethodType, CONSTANT_Module,
+                  CONSTANT_Package -> index1[c] = in.readUnsignedShort();
+                case CONSTANT_Fieldref, CONSTANT_Methodref, CONSTANT_InterfaceMethodref,
+                  CONSTANT_NameAndType, CONSTANT_Dynamic, CONSTANT_InvokeDynamic -> {
+                    index1[c] = in.readUnsignedShort();
+                    index2[c] = in.readUnsignedShort(); }
+                case CONSTANT_MethodHandle -> {
+                    in.readUnsignedByte(); // Reference kind.
+                    index1[c] = in.readUnsignedShort(); }
+                default -> throw new IOException( "Unknown constant tag " + t ); }}
+
+      // Class
+      // ─────
+        accessFlags = in.readUnsignedShort();
+        name = className( in.readUnsignedShort() );
+        superName = className( in.readUnsignedShort() );
+        final String[] interfaces = new String[in.readUnsignedShort()];
+        for( int i = 0; i < interfaces.length; ++i ) interfaces[i] = className( in.readUnsignedShort() );
+        interfaceNames = List.of( interfaces );
+        final List<List<Member>> members = new ArrayList<>( 2 );
+        for( int membersKind = 0; membersKind < 2; ++membersKind ) { // Fields, then methods.
+            final Member[] mm = new Member[in.readUnsignedShort()];
+            for( int m = 0; m < mm.length; ++m ) {
+                final int flags = in.readUnsignedShort();
+                mm[m] = new Member( name, utf8[in.readUnsignedShort()], utf8[in.readUnsignedShort()],
+                  flags );
+                skipAttributes( in ); }
+            members.add( List.of( mm )); }
+        fields = members.get( 0 );
+        methods = members.get( 1 );
+        String s = null;
+        for( int a = in.readUnsignedShort(); a > 0; --a ) {
+            final String aName = utf8[in.readUnsignedShort()];
+            final int length = in.readInt();
+            if( aName.equals( "SourceFile" )) s = utf8[in.readUnsignedShort()];
+            else in.skipNBytes( length ); }
+        sourceFile = s; }
+
+
+
+    /** The access flags of the class, e.g. `0x0001` for `public`.
+      */
+    public final int accessFlags;
+
+
+
+    /** Gives the internal name equivalent to each string constant that has the form of a binary
+      * class name, e.g. `wet/sprocket/Toad` for `"wet.sprocket.Toad"`.  Such a string may serve
+      * to load a class reflectively.
+      */
+    public Set<String> classLikeStrings() {
+        final Set<String> names = new HashSet<>();
+        for( int c = 1; c < tag.length; ++c ) {
+            if( tag[c] != CONSTANT_String ) continue;
+            final String s = utf8[index1[c]];
+            if( classLikePattern.matcher(s).matches() ) names.add( s.replace( '.', '/' )); }
+        return names; }
+
+
+
+    /** Gives the internal name of each class that the class file refers to, whether as a constant
+      * of the constant pool, or within a descriptor or signature.  Where the reference is to an array
+      * class, gives the name of its element class, if any.  This overestimates the references, taking
+      * any text of the constant pool in the form of a descriptor for a descriptor.
+      */
+    public Set<String> classReferences() {
+        final Set<String> names = new HashSet<>();
+        for( int c = 1; c < tag.length; ++c ) {
+            if( tag[c] == CONSTANT_Class ) {
+                final String n = utf8[index1[c]];
+                if( n.charAt(0) != '[' ) names.add( n ); } // Else it is an array descriptor.
+            else if( tag[c] == CONSTANT_Utf8 && utf8[c].indexOf(';') > 0 ) {
+                final Matcher m = descriptorClassPattern.matcher( utf8[c] );
+                while( m.find() ) names.add( m.group( 1 )); }}
+        names.remove( name );
+        return names; }
+
+
+
+    /** The fields declared by the class.
+      */
+    public final List<Member> fields;
+
+
+
+    /** The internal names of the interfaces the class directly implements, or extends in the case
+      * of an interface.
+      */
+    public final List<String> interfaceNames;
+
+
+
+    /** Gives each field and method to which the class file refers by way of its constant pool,
+      * whether or not it is declared by the class itself.  The access flags of each are given as zero.
+      */
+    public List<Member> memberReferences() {
+        final List<Member> references = new ArrayList<>();
+        for( int c = 1; c < tag.length; ++c ) {
+            switch( tag[c] ) {
+                case CONSTANT_Fieldref, CONSTANT_Methodref, CONSTANT_InterfaceMethodref -> {
+                    final int nameAndType = index2[c];
+                    references.add( new Member( className(index1[c]), utf8[index1[nameAndType]],
+                      utf8[index2[nameAndType]], 0 )); }
+                default -> {}}}
+        return references; }
+
+
+
+    /** The methods declared by the class, including any constructors and static initializer.
+      */
+    public final List<Member> methods;
+
+
+
+    /** Parses the class file at `file`.
+      *
+      *     @throws IOException If `file` cannot be read, or its content is not a class file.
+      */
+    public static ClassFile read( final Path file ) throws IOException {
+        try( final var in = new DataInputStream( new BufferedInputStream(
+              Files.newInputStream( file )))) {
+            return new ClassFile( in ); }}
+
+
+
+    /** The binary name of the class in internal form, e.g. `wet/sprocket/Toad$Wart`.
+      */
+    public final String name;
+
+
+
+    /** The simple name of the source file from which the class was compiled, e.g. `Toad.java`;
+      * or null if the class file does not record it.
+      */
+    public final String sourceFile;
+
+
+
+    /** The internal name of the direct superclass, or null if the class is `java.lang.Object`
+      * or a module descriptor.
+      */
+    public final String superName;
+
+
+
+   // ▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀
+
+
+    /** A field or method, either as declared or as referred to.
+      */
+    public static final class Member {
+
+
+        /** @see #owner
+          * @see #name
+          * @see #descriptor
+          * @see #accessFlags
+          */
+        public Member( final String owner, final String name, final String descriptor,
+              final int accessFlags ) {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.accessFlags = accessFlags; }
+
+
+        /** The access flags of the member as declared, or zero for a reference.
+          */
+        public final int accessFlags;
+
+
+        /** The descriptor of the member, e.g. `(I)Ljava/lang/String;`.
+          */
+        public final String descriptor;
+
+
+        /** The name of the member, e.g. `toString` or `<init>`.
+          */
+        public final String name;
+
+
+        /** The internal name of the class that declares the member, or through which it is referred to.
+          */
+        public final String owner; }
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    private static final byte CONSTANT_Utf8 = 1;
+    private static final byte CONSTANT_Integer = 3;
+    private static final byte CONSTANT_Float = 4;
+    private static final byte CONSTANT_Long = 5;
+    private static final byte CONSTANT_Double = 6;
+    private static final byte CONSTANT_Class = 7;
+    private static final byte CONSTANT_String = 8;
+    private static final byte CONSTANT_Fieldref = 9;
+    private static final byte CONSTANT_Methodref = 10;
+    private static final byte CONSTANT_InterfaceMethodref = 11;
+    private static final byte CONSTANT_NameAndType = 12;
+    private static final byte CONSTANT_MethodHandle = 15;
+    private static final byte CONSTANT_MethodType = 16;
+    private static final byte CONSTANT_Dynamic = 17;
+    private static final byte CONSTANT_InvokeDynamic = 18;
+    private static final byte CONSTANT_Module = 19;
+    private static final byte CONSTANT_Package = 20;
+
+
+
+    /** Gives the name of the class at `index` of the constant pool, or null if `index` is zero.
+      */
+    private String className( final int index ) { return index == 0 ? null : utf8[index1[index]]; }
+
+
+
+    private static final Pattern classLikePattern = Pattern.compile(
+      "\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*"
+        + "(?:\\.\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*)+" );
+
+
+
+    private static final Pattern descriptorClassPattern = Pattern.compile( "L([^;<>.\\[]+)[;<]" );
+
+
+
+    /** For each entry of the constant pool, its first index if it has one.
+      */
+    private final int[] index1;
+
+
+
+    /** For each entry of the constant pool, its second index if it has one.
+      */
+    private final int[] index2;
+
+
+
+    private static void skipAttributes( final DataInputStream in ) throws IOException {
+        for( int a = in.readUnsignedShort(); a > 0; --a ) {
+            in.readUnsignedShort(); // Name.
+            in.skipNBytes( in.readInt() & 0xFFFFFFFFL ); }}
+
+
+
+    /** For each entry of the constant pool, its tag, or zero for an entry unused.
+      */
+    private final byte[] tag;
+
+
+
+    /** For each entry of the constant pool, its value if a `CONSTANT_Utf8`, otherwise null.
+      */
+    private final String[] utf8; }
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
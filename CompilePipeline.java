@@ -0,0 +1,258 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static building.Makeshift.Bootstrap.addCompilableSource;
+import static building.Makeshift.Bootstrap.packageOf;
+import static building.Makeshift.Bootstrap.Unhandled;
+import static building.Makeshift.Bootstrap.UserError;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+
+/** A pipeline from the scanning of source directories to the compilation of their sources, which
+  * overlaps the two in place of scanning all directories before compiling any.  As each directory
+  * is scanned, its sources in need of compilation are queued as a unit to a compiler running
+  * in the background.  The compiler takes whatever units are ready, compiles them together,
+  * and repeats until the scan ends, when it compiles the rest.  The queue is bounded, so holding
+  * the scan when the compiler falls far behind.
+  *
+  * <p>A unit is ready when each other package it refers to has been scanned, and compiled if it needed
+  * compiling.  A unit is taken to refer to a package if the text of any of its sources includes
+  * the package name followed by a period, other than as part of the name of a subpackage in the scan,
+  * and regardless of context.  This overestimates the references, which is safe.  Units that refer
+  * to each other in a cycle are compiled together at the end.</p>
+  *
+  * <p>The pipeline is enabled by system property `building.Makeshift.pipelinedCompilation`,
+  * a value of ‘true’ enabling it.  It pays mostly where the file system is slow to scan,
+  * and otherwise its extra compilations cost more than they gain, unless they run on
+  * {@linkplain JavacWorkers compiler workers}.</p>
+  *
+  *     @see Bootstrap#addCompilableSource(List,Path,Predicate,RebuildRecord.Reason)
+  */
+public final class CompilePipeline {
+
+
+    private CompilePipeline( final Compiler compiler, final Set<String> packages ) {
+        this.compiler = compiler;
+        this.packages = packages;
+        final List<String> pp = new ArrayList<>( packages );
+        pp.sort( Comparator.comparingInt( String::length ).reversed() ); // Subpackages first.
+        for( final String p: pp ) {
+            packagePatterns.put( p, Pattern.compile( "(?<![\\p{javaJavaIdentifierPart}.])"
+              + Pattern.quote(p) + "(?!\\p{javaJavaIdentifierPart})" )); }}
+
+
+
+    /** Scans source directories and compiles their sources, as needed, by way of a pipeline.
+      * Does not descend into subdirectories.
+      *
+      *     @param directories The proper path of each directory to scan, mapped to a tester that
+      *       answers whether a source file of the directory is to be considered for compilation.
+      *     @param forcingReason The reason to compile every source that tests true, or null if there
+      *       is none.
+      *     @param compiler The compiler of the sources.
+      *     @throws UserError On the failure of any compilation, if so thrown.
+      */
+    public static void compile( final Map<Path,Predicate<Path>> directories,
+          final RebuildRecord.Reason forcingReason, final Compiler compiler ) throws UserError {
+        final Set<String> packages = new HashSet<>();
+        directories.keySet().forEach( d -> packages.add( packageOf( d )));
+        final CompilePipeline p = new CompilePipeline( compiler, packages );
+        final WorkGroup g = new WorkGroup( 1 );
+        g.fork( p::compileAll );
+        try {
+            for( final Map.Entry<Path,Predicate<Path>> e: directories.entrySet() ) {
+                final Path directory = e.getKey();
+                final List<String> sourceNames = new ArrayList<>();
+                addCompilableSource( sourceNames, directory, e.getValue(), forcingReason );
+                if( !p.put( p.new Unit( packageOf(directory), sourceNames ))) break; }}
+                  // Else the compiler has failed, as `join` will report.
+        catch( final RuntimeException|Error x ) {
+            g.cancel();
+            try { g.join(); }
+            catch( UserError|RuntimeException y ) {} // Already the scan has failed, so unreported.
+            throw x; }
+        finally { p.endScan(); }
+        g.join(); }
+
+
+
+    /** Whether the pipeline is enabled.
+      */
+    public static final boolean isEnabled = Boolean.getBoolean(
+      "building.Makeshift.pipelinedCompilation" );
+
+
+
+   // ▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀
+
+
+    /** A compiler of Java source code for the pipeline.
+      */
+    public static @FunctionalInterface interface Compiler {
+
+        /** @param sourceNames The proper path of each source file to compile.
+          */
+        public void compile( List<String> sourceNames ) throws UserError; }
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    /** The greatest number of units to hold in the queue.  Enough to keep the compiler supplied,
+      * while limiting how far the scan may run ahead of it.
+      */
+    private static final int capacity = 8;
+
+
+
+    /** Compiles units as they become ready, until the scan ends and none remain.
+      */
+    private void compileAll() throws UserError {
+        final List<Unit> pending = new ArrayList<>(); // Scanned, but not yet compiled.
+        final Set<String> unsettled = new HashSet<>( packages ); // Not yet scanned, or compiled.
+        try {
+            for( ;; ) {
+                final boolean isScanEnded;
+                synchronized( this ) {
+                    pending.addAll( queue );
+                    queue.clear();
+                    notifyAll(); // Making room for the scan.
+                    isScanEnded = this.isScanEnded; }
+                pending.removeIf( u -> {
+                    if( !u.sourceNames.isEmpty() ) return false;
+                    unsettled.remove( u.JavaPackage ); // Nothing to compile.
+                    return true; });
+                final List<Unit> ready = new ArrayList<>();
+                for( final Unit u: pending ) {
+                    if( Collections.disjoint( u.references, unsettled )) ready.add( u ); }
+                if( ready.isEmpty() ) {
+                    if( isScanEnded ) {
+                        if( !pending.isEmpty() ) compile( pending ); // Units referring in a cycle.
+                        return; }
+                    synchronized( this ) {
+                        while( queue.isEmpty() && !this.isScanEnded ) wait(); }
+                    continue; }
+                compile( ready );
+                pending.removeAll( ready );
+                ready.forEach( u -> unsettled.remove( u.JavaPackage )); }}
+        catch( final InterruptedException x ) { // The group is cancelled.
+            Thread.currentThread().interrupt(); // Avoid hiding the fact of interruption.
+            throw new Unhandled( x ); }
+        finally {
+            synchronized( this ) {
+                isCompileEnded = true;
+                notifyAll(); }}} // Releasing any scan that waits on a full queue.
+
+
+
+    private void compile( final List<Unit> units ) throws UserError {
+        final List<String> sourceNames = new ArrayList<>();
+        units.forEach( u -> sourceNames.addAll( u.sourceNames ));
+        compiler.compile( sourceNames ); }
+
+
+
+    private final Compiler compiler;
+
+
+
+    /** Signals the end of the scan.
+      */
+    private synchronized void endScan() {
+        isScanEnded = true;
+        notifyAll(); }
+
+
+
+    private boolean isCompileEnded; // Guarded by the instance monitor.
+
+
+
+    private boolean isScanEnded; // Guarded by the instance monitor.
+
+
+
+    /** The package of each directory to scan, mapped to a pattern that matches its name in source text.
+      * Ordered such that each subpackage precedes its parent.
+      */
+    private final Map<String,Pattern> packagePatterns = new LinkedHashMap<>();
+
+
+
+    /** The package of each directory to scan.
+      */
+    private final Set<String> packages;
+
+
+
+    /** Puts `u` into the queue, waiting if necessary for room.
+      *
+      *     @return True if `u` was put, false if the compiler has ended without it.
+      */
+    private synchronized boolean put( final Unit u ) {
+        try { while( queue.size() >= capacity && !isCompileEnded ) wait(); }
+        catch( final InterruptedException x ) {
+            Thread.currentThread().interrupt(); // Avoid hiding the fact of interruption.
+            throw new Unhandled( x ); }
+        if( isCompileEnded ) return false;
+        queue.add( u );
+        notifyAll();
+        return true; }
+
+
+
+    private final Queue<Unit> queue = new ArrayDeque<>(); // Guarded by the instance monitor.
+
+
+
+   // ▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀
+
+
+    /** The sources of a package in need of compilation.
+      */
+    private final class Unit {
+
+
+        Unit( final String JavaPackage, final List<String> sourceNames ) {
+            this.JavaPackage = JavaPackage;
+            this.sourceNames = sourceNames;
+            for( final String n: sourceNames ) {
+                String text;
+                try { text = Files.readString( Path.of(n), ISO_8859_1 ); }
+                  // ISO 8859-1 decodes any byte sequence, and package names are mostly ASCII.
+                catch( IOException x ) { throw new Unhandled( x ); }
+                for( final Map.Entry<String,Pattern> e: packagePatterns.entrySet() ) {
+                    final String p = e.getKey();
+                    final Matcher m = e.getValue().matcher( text );
+                    if( !m.find() ) continue;
+                    if( !p.equals( JavaPackage )) {
+                        do {
+                            if( m.end() < text.length() && text.charAt(m.end()) == '.' ) {
+                                references.add( p );
+                                break; }}
+                        while( m.find() ); }
+                    text = m.replaceAll( "" ); }}} // Lest a parent package be seen in its name.
+
+
+        final String JavaPackage;
+
+
+        /** Each other package of the scan that the sources refer to.
+          */
+        final Set<String> references = new HashSet<>();
+
+
+        final List<String> sourceNames; }}
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
@@ -0,0 +1,253 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import com.sun.source.tree.*;
+import com.sun.source.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.lang.model.element.Modifier;
+import javax.tools.*;
+
+import static building.Makeshift.Bootstrap.outDirectory;
+import static building.Makeshift.Bootstrap.printProgressLeader;
+import static building.Makeshift.Bootstrap.Unhandled;
+import static building.Makeshift.Bootstrap.UserError;
+
+
+/** A compiler of header classes, which lets the projects of a chain of building code compile
+  * in a pipeline, rather than strictly one after another.  For the sources of an upstream project
+  * it quickly compiles stubs, class files with the same signatures and constants but no code.
+  * Then it compiles the sources in full, but in the background.  Meanwhile the build may go on
+  * to compile downstream projects against the stubs.
+  *
+  * <p>Header compilation applies only where more than one processor is available, otherwise there is
+  * nothing to gain by it.  System property `building.Makeshift.headerCompilation` may override this,
+  * a value of ‘true’ or ‘false’ enabling or disabling it regardless.</p>
+  *
+  *     @see BuilderBuilder#build()
+  */
+public final class HeaderCompiler {
+
+
+    private HeaderCompiler() {}
+
+
+
+    /** Awaits the end of all compilation started in the background, then deletes any stubs.
+      *
+      *     @throws UserError If any compilation failed.
+      */
+    public static void awaitFullCompilation() throws UserError {
+        final WorkGroup g;
+        synchronized( HeaderCompiler.class ) {
+            g = fullCompilation;
+            fullCompilation = null; }
+        if( g == null ) return;
+        try { g.join(); }
+        finally { deleteHeaders(); }}
+
+
+
+    /** Cancels all compilation started in the background, then deletes any stubs.
+      */
+    public static void cancelFullCompilation() {
+        final WorkGroup g;
+        synchronized( HeaderCompiler.class ) {
+            g = fullCompilation;
+            fullCompilation = null; }
+        if( g == null ) return;
+        g.cancel();
+        try { g.join(); }
+        catch( UserError|RuntimeException x ) {} // Already the build has failed, so unreported.
+        finally { deleteHeaders(); }}
+
+
+
+    /** Arguments for `javac` that set its class path to include any stubs compiled in the present
+      * build.  Give these to the compilation of code that may depend on projects whose compilation
+      * in full is yet underway.
+      *
+      *     @return The arguments, or an empty list if no stubs exist.
+      */
+    public static synchronized List<String> classPathArguments() {
+        if( headerDirectory == null ) return List.of();
+        return List.of( "--class-path", headerClasses() + File.pathSeparator + outDirectory );}
+
+
+
+    /** Compiles Java source code to class files, first compiling stubs where applicable and putting
+      * the full compilation into the background.  Where stubs are inapplicable or fail to compile,
+      * this method compiles in full before returning.
+      *
+      *     @param projectPackage The proper package of the project whose source code is being compiled.
+      *     @param sourceNames The proper path of each source file to compile.
+      *     @see #awaitFullCompilation()
+      */
+    public static void compile( final String projectPackage, final List<String> sourceNames )
+          throws UserError {
+        final List<String> classPathArguments = classPathArguments(); // Before any stubs of this.
+        if( !isEnabled || !compileStubs( projectPackage, sourceNames )) {
+            Bootstrap.compile( projectPackage, sourceNames, classPathArguments );
+            return; }
+        final WorkGroup g;
+        synchronized( HeaderCompiler.class ) {
+            if( fullCompilation == null ) fullCompilation = new WorkGroup();
+            g = fullCompilation; }
+        g.fork( () -> Bootstrap.compile( projectPackage, sourceNames, classPathArguments )); }
+
+
+
+    /** Whether header compilation is enabled.
+      */
+    public static final boolean isEnabled; static {
+        final String p = System.getProperty( "building.Makeshift.headerCompilation" );
+        isEnabled = p == null ? Runtime.getRuntime().availableProcessors() > 1
+          : Boolean.parseBoolean( p ); }
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    /** Compiles stubs for the given sources, each to stand in for the class files of its source
+      * on the class path of subsequent compilations.
+      *
+      *     @return True if the stubs compiled successfully, false otherwise.
+      */
+    private static boolean compileStubs( final String projectPackage, final List<String> sourceNames ) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if( compiler == null ) return false; // The runtime lacks `jdk.compiler`.
+        final Path sourceDirectory;
+        final List<String> stubNames = new ArrayList<>();
+        try( final StandardJavaFileManager fm = compiler.getStandardFileManager( null, null, null )) {
+            synchronized( HeaderCompiler.class ) {
+                if( headerDirectory == null ) {
+                    headerDirectory = Files.createTempDirectory( "building.Makeshift.headers" ); }
+                sourceDirectory = headerDirectory.resolve( "sources" ); }
+            final JavacTask task = (JavacTask)compiler.getTask( null, fm, _d -> {},
+              List.of("-proc:none"), null, fm.getJavaFileObjectsFromStrings( sourceNames ));
+            final SourcePositions positions = Trees.instance(task).getSourcePositions();
+            for( final CompilationUnitTree unit: task.parse() ) {
+                final Path stubFile = sourceDirectory.resolve( unit.getSourceFile().getName() );
+                Files.createDirectories( stubFile.getParent() );
+                Files.writeString( stubFile, stub( unit, positions ));
+                stubNames.add( stubFile.toString() ); }}
+        catch( IOException x ) { throw new Unhandled( x ); }
+        if( stubNames.size() != sourceNames.size() ) return false; // Not all sources could be parsed.
+        final List<String> arguments = new ArrayList<>( List.of(
+          "@building/Makeshift/java_javac_arguments", "@building/Makeshift/javac_arguments",
+          "-d", headerClasses().toString(),
+          "--class-path", headerClasses() + File.pathSeparator + outDirectory,
+          "-implicit:none", "-proc:none", "-Xlint:none", "-nowarn" ));
+        arguments.addAll( stubNames );
+        final var out = new StringWriter(); // Unreported, the fallback being a full compilation.
+        final int exitValue = java.util.spi.ToolProvider.findFirst( "javac" ).orElseThrow()
+          .run( new PrintWriter(out), new PrintWriter(out), arguments.toArray( new String[0] ));
+        if( exitValue != 0 ) return false;
+        final var o = System.out;
+        synchronized( o ) {
+            printProgressLeader( projectPackage, "headers" );
+            o.println( sourceNames.size() ); }
+        return true; }
+
+
+
+    private static void deleteHeaders() {
+        final Path d;
+        synchronized( HeaderCompiler.class ) {
+            d = headerDirectory;
+            headerDirectory = null; }
+        if( d == null ) return;
+        try( final var pp = Files.walk( d )) {
+            for( final Path p: (Iterable<Path>)pp.sorted( Comparator.reverseOrder() )::iterator ) {
+                Files.delete( p ); }}
+        catch( IOException x ) { throw new Unhandled( x ); }}
+
+
+
+    private static WorkGroup fullCompilation; // Null if none is underway.
+
+
+
+    private static Path headerClasses() { return headerDirectory.resolve( "classes" ); }
+
+
+
+    private static Path headerDirectory; // Null if no stubs exist.
+
+
+
+    /** Gives the source code of a stub for `unit`.  The stub is the original source with the bodies
+      * of methods and constructors reduced to a throw statement, initializer blocks removed,
+      * and the `final` modifier removed from fields that no longer would be definitely assigned.
+      * The initializers of fields are kept, so preserving the values of constants.
+      */
+    private static String stub( final CompilationUnitTree unit, final SourcePositions positions )
+          throws IOException {
+        final String text = unit.getSourceFile().getCharContent( true ).toString();
+        final TreeMap<Integer,int[]> cuts = new TreeMap<>(); // Start → [end, index of replacement].
+        final List<String> replacements = new ArrayList<>();
+        final class Cutter extends TreeScanner<Void,Void> {
+            void cut( final Tree t, final String replacement ) {
+                cut( (int)positions.getStartPosition(unit,t), (int)positions.getEndPosition(unit,t),
+                  replacement ); }
+            void cut( final int start, final int end, final String replacement ) {
+                cuts.put( start, new int[] { end, replacements.size() });
+                replacements.add( replacement ); }
+            public @Override Void visitClass( final ClassTree c, Void _v ) {
+                for( final Tree m: c.getMembers() ) {
+                    if( m instanceof BlockTree ) cut( m, "" ); // An initializer.
+                    else if( m instanceof VariableTree ) {
+                        final VariableTree v = (VariableTree)m;
+                        final ModifiersTree mm = v.getModifiers();
+                        if( v.getInitializer() == null && mm.getFlags().contains( Modifier.FINAL )) {
+                            int start = (int)positions.getStartPosition( unit, mm );
+                            for( final AnnotationTree a: mm.getAnnotations() ) {
+                                start = Math.max( start, (int)positions.getEndPosition( unit, a )); }
+                            final int end = (int)positions.getEndPosition( unit, mm );
+                            final Matcher f = finalPattern.matcher( text );
+                            if( start >= 0 && end > start && f.region(start,end).find() ) {
+                                cut( f.start(), f.end(), "" ); }} // Else the modifier is implicit.
+                        scan( v.getInitializer(), null ); } // So reaching any anonymous class.
+                    else scan( m, null ); }
+                return null; }
+            public @Override Void visitMethod( final MethodTree m, Void _v ) {
+                final BlockTree body = m.getBody();
+                if( body == null ) return null;
+                String explicitInvocation = ""; // Of a superclass or alternate constructor, if any.
+                if( m.getName().contentEquals( "<init>" ) && !body.getStatements().isEmpty() ) {
+                    final StatementTree s = body.getStatements().get( 0 );
+                    if( s instanceof ExpressionStatementTree
+                      && ((ExpressionStatementTree)s).getExpression() instanceof MethodInvocationTree ) {
+                        final ExpressionTree i = ((MethodInvocationTree)((ExpressionStatementTree)s)
+                          .getExpression()).getMethodSelect();
+                        final String n = i instanceof IdentifierTree ?
+                          ((IdentifierTree)i).getName().toString() : i instanceof MemberSelectTree ?
+                          ((MemberSelectTree)i).getIdentifier().toString() : "";
+                        if( n.equals("this") || n.equals("super") ) {
+                            explicitInvocation = text.substring( (int)positions.getStartPosition(unit,s),
+                              (int)positions.getEndPosition(unit,s) ) + ' '; }}}
+                cut( body, "{ " + explicitInvocation + "throw null; }" );
+                return null; }}
+        new Cutter().scan( unit, null );
+        final StringBuilder b = new StringBuilder( text.length() );
+        int c = 0; // Cursor into `text`.
+        for( final Map.Entry<Integer,int[]> cut: cuts.entrySet() ) {
+            final int start = cut.getKey();
+            if( start < c ) continue; // Nested within an earlier cut.
+            b.append( text, c, start ).append( replacements.get( cut.getValue()[1] ));
+            c = cut.getValue()[0]; }
+        b.append( text, c, text.length() );
+        return b.toString(); }
+
+
+
+    private static final Pattern finalPattern = Pattern.compile( "\\bfinal\\b" ); }
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
@@ -0,0 +1,135 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+import static building.Makeshift.Bootstrap.outDirectory;
+import static building.Makeshift.Bootstrap.projectPath;
+import static building.Makeshift.Bootstrap.Unhandled;
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+
+/** A launch profile for `javac` running in a process of its own, which shortens the startup
+  * of the compiler.  It shares the classes of the compiler from a class-data sharing archive,
+  * which it makes during the first successful compilation under a given Java installation.
+  * For compilations of few enough source files, it further confines the runtime to its quick-starting
+  * code compiler and a serial garbage collector.  Where the archive proves unusable, as when
+  * the Java installation has changed, the runtime ignores it without remark.
+  *
+  * <p>System property `building.Makeshift.javacProfile` set to ‘false’ disables the profile.</p>
+  *
+  *     @see <a href='https://docs.oracle.com/en/java/javase/15/docs/specs/man/java.html#application-class-data-sharing'>
+  *       Application class-data sharing</a>
+  */
+public final class JavacProfile {
+
+
+    private JavacProfile() {}
+
+
+
+    /** Gives the runtime options of the profile in the form of `javac` arguments.
+      *
+      *     @param sourceCount The number of source files to compile.
+      *     @return The arguments, or an empty list if the profile is disabled.
+      *     @see #end(List,boolean)
+      */
+    public static List<String> arguments( final int sourceCount ) {
+        if( !isEnabled ) return List.of();
+        final List<String> arguments = new ArrayList<>();
+        if( Files.isRegularFile( archive )) arguments.add( "-J-XX:SharedArchiveFile=" + archive );
+        else if( claimArchiving() ) arguments.add( archivingArgument );
+        arguments.add( "-J-Xshare:auto" );
+        arguments.add( "-J-Xlog:cds=off,cds+dynamic=off" );
+        if( sourceCount <= quickStartLimit ) {
+            arguments.add( "-J-XX:TieredStopAtLevel=1" );
+            arguments.add( "-J-XX:+UseSerialGC" ); }
+        return arguments; }
+
+
+
+    /** Ends a compilation launched with the given arguments, installing any archive it wrote.
+      * Call this once for each call to `arguments`, after the compiler process has ended
+      * or failed to start.
+      *
+      *     @param arguments The arguments obtained from {@linkplain #arguments(int) `arguments`}.
+      *     @param isSuccessful Whether the compilation succeeded.
+      */
+    public static void end( final List<String> arguments, final boolean isSuccessful ) {
+        if( !arguments.contains( archivingArgument )) return;
+        try {
+            if( isSuccessful && Files.isRegularFile( archiveNew )) {
+                Files.move( archiveNew, archive, ATOMIC_MOVE, REPLACE_EXISTING ); }
+            else Files.deleteIfExists( archiveNew ); } // Possibly incomplete.
+        catch( IOException x ) { throw new Unhandled( x ); }
+        finally {
+            synchronized( JavacProfile.class ) { isArchiving = false; }}}
+
+
+
+    /** Whether the profile is enabled.
+      */
+    public static final boolean isEnabled = !"false".equals(
+      System.getProperty( "building.Makeshift.javacProfile" ));
+
+
+
+    /** The largest number of source files for which the runtime is confined to its quick-starting
+      * code compiler and serial garbage collector.  Beyond this, a compilation is likely to run long
+      * enough to profit from the optimizing compiler.
+      */
+    public static final int quickStartLimit = 500;
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    /** The class-data sharing archive for the Java installation at `java.home`.  The name of the file
+      * is a hash of the location and version of the installation.
+      */
+    private static final Path archive; static {
+        final Path home = Path.of( System.getProperty( "java.home" ));
+        final String key = Integer.toHexString(
+          (home + "\n" + System.getProperty("java.vm.version")).hashCode() );
+        archive = outDirectory.resolve(projectPath).resolve("javac_cds").resolve( key + ".jsa" );
+        try { // Discard the archive if it predates the classes it archives, e.g. after a patch in place.
+            if( getLastModifiedTime(archive).compareTo(getLastModifiedTime(
+              home.resolve("lib").resolve("modules"))) < 0 ) Files.delete( archive ); }
+        catch( NoSuchFileException x ) {} // No archive, or an installation without a modules image.
+        catch( IOException x ) { throw new Unhandled( x ); }}
+
+
+
+    private static final Path archiveNew = archive.resolveSibling( archive.getFileName() + "."
+      + ProcessHandle.current().pid() ); // Unique to the present build, lest concurrent builds collide.
+
+
+
+    private static final String archivingArgument = "-J-XX:ArchiveClassesAtExit=" + archiveNew;
+
+
+
+    /** Claims the sole right to write the archive, if it is unclaimed.
+      *
+      *     @return True if the claim succeeded, false otherwise.
+      */
+    private static synchronized boolean claimArchiving() {
+        if( isArchiving ) return false; // Already another compilation is writing it.
+        try { Files.createDirectories( archive.getParent() ); }
+        catch( IOException x ) { throw new Unhandled( x ); }
+        isArchiving = true;
+        return true; }
+
+
+
+    private static boolean isArchiving; } // Whether a compilation is writing the archive.
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
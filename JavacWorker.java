@@ -0,0 +1,86 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+
+/** A process that compiles Java source code on request, sparing each compilation the startup
+  * of a fresh compiler.  It reads requests from its standard input and answers each on its standard
+  * output, until its input ends.  Both are written in the binary form of `DataOutputStream`,
+  * strings being written as a length in bytes followed by UTF-8.
+  *
+  * <p>A request is either a ping, the single byte {@value #PING}, which is answered by the same byte;
+  * or a compilation, the byte {@value #COMPILE} followed by the count of arguments for `javac`
+  * and each argument.  The answer to a compilation is the exit value of `javac` followed by its
+  * textual output.</p>
+  *
+  *     @see JavacWorkers
+  */
+public final class JavacWorker {
+
+
+    private JavacWorker() {}
+
+
+
+    /** Request code for a compilation.
+      */
+    public static final byte COMPILE = 1;
+
+
+
+    /** Request code for a ping.
+      */
+    public static final byte PING = 0;
+
+
+
+    /** Takes requests from the standard input stream until it ends.
+      */
+    public static void main( final String[] _arguments ) throws IOException {
+        final var in = new DataInputStream( new BufferedInputStream( System.in ));
+        final var out = new DataOutputStream( new BufferedOutputStream(
+          new FileOutputStream( FileDescriptor.out )));
+        System.setOut( System.err ); // Keeping the answers clear of any stray output.
+        final java.util.spi.ToolProvider javac =
+          java.util.spi.ToolProvider.findFirst( "javac" ).orElseThrow();
+        for( ;; ) {
+            final int request = in.read();
+            switch( request ) {
+                case -1 -> { return; } // The pool has ended.
+                case PING -> out.writeByte( PING );
+                case COMPILE -> {
+                    final String[] arguments = new String[in.readInt()];
+                    for( int a = 0; a < arguments.length; ++a ) arguments[a] = readString( in );
+                    final var capture = new StringWriter();
+                    final var w = new PrintWriter( capture );
+                    final int exitValue = javac.run( w, w, arguments );
+                    w.flush();
+                    out.writeInt( exitValue );
+                    writeString( out, capture.toString() ); }
+                default -> throw new IOException( "Unknown request: " + request ); }
+            out.flush(); }}
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    static String readString( final DataInputStream in ) throws IOException {
+        final byte[] b = new byte[in.readInt()];
+        in.readFully( b );
+        return new String( b, UTF_8 ); }
+
+
+
+    static void writeString( final DataOutputStream out, final String s ) throws IOException {
+        final byte[] b = s.getBytes( UTF_8 );
+        out.writeInt( b.length );
+        out.write( b ); }}
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
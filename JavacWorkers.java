@@ -0,0 +1,214 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.*;
+import java.util.*;
+
+import static building.Makeshift.Bootstrap.outDirectory;
+import static building.Makeshift.JavacWorker.COMPILE;
+import static building.Makeshift.JavacWorker.PING;
+import static building.Makeshift.JavacWorker.readString;
+import static building.Makeshift.JavacWorker.writeString;
+import static java.lang.ProcessBuilder.Redirect.INHERIT;
+
+
+/** A pool of {@linkplain JavacWorker compiler workers}, long-lived processes to which Makeshift sends
+  * its compilations in place of starting a fresh `javac` process for each.  So the compilations
+  * run isolated from the build, yet on a warm compiler.  Workers are started on demand up to the size
+  * of the pool, and they end with the build.  Before each use a worker is pinged, and replaced
+  * if it fails to answer within a few seconds.  Should a worker die during a compilation, it is likewise replaced
+  * and the compilation tried once more.
+  *
+  * <p>The size of the pool is given by system property `building.Makeshift.javacWorkers`.
+  * It defaults to zero, meaning no pool, in which case each compilation runs in a process
+  * of its own.</p>
+  *
+  *     @see Bootstrap#compile(String,List,List,java.util.function.LongConsumer)
+  */
+public final class JavacWorkers {
+
+
+    private JavacWorkers() {}
+
+
+
+    /** Compiles on a worker of the pool, waiting for one to become available if necessary.
+      * While the compilation runs, the worker is {@linkplain WorkGroup#register(Process) registered}
+      * with any work group of the calling thread, so allowing its cancellation.
+      *
+      *     @param arguments The arguments for `javac`.
+      *     @throws IOException If the compilation fails twice for the loss of its worker.
+      *     @throws InterruptedException If the calling thread is interrupted, or the compilation
+      *       is cancelled.
+      */
+    public static Result compile( final List<String> arguments )
+          throws IOException, InterruptedException {
+        if( !isEnabled ) throw new IllegalStateException();
+        for( int attempt = 1;; ++attempt ) {
+            final Worker w = acquire();
+            boolean isHealthy = false;
+            WorkGroup.register( w.process );
+            try {
+                final Result r = w.compile( arguments );
+                isHealthy = true;
+                return r; }
+            catch( IOException x ) {
+                if( Thread.interrupted() ) throw new InterruptedException(); // Likely it was destroyed.
+                if( attempt > 1 ) throw x; } // Else the worker crashed, so retry on a fresh one.
+            finally {
+                WorkGroup.unregister( w.process );
+                release( w, isHealthy ); }}}
+
+
+
+    /** Whether the pool is enabled, its size being greater than zero.
+      */
+    public static final boolean isEnabled;
+
+
+
+    /** The maximum number of workers.
+      */
+    public static final int size; static {
+        final String p = System.getProperty( "building.Makeshift.javacWorkers" );
+        size = p == null ? 0 : Integer.parseInt( p.strip() );
+        isEnabled = size > 0; }
+
+
+
+   // ▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀
+
+
+    /** The outcome of a compilation.
+      */
+    public static final class Result {
+
+
+        private Result( final int exitValue, final String output ) {
+            this.exitValue = exitValue;
+            this.output = output; }
+
+
+        /** The exit value of `javac`: zero on success, one on error in the source code.
+          */
+        public final int exitValue;
+
+
+        /** The textual output of `javac`, as it would have written to the terminal.
+          */
+        public final String output; }
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    /** Takes a responsive worker from the idle workers, or starts a new one, waiting if necessary
+      * until the pool has room for it.
+      */
+    private static Worker acquire() throws IOException, InterruptedException {
+        for( ;; ) {
+            final Worker w;
+            synchronized( JavacWorkers.class ) {
+                while( idle.isEmpty() && workerCount >= size ) JavacWorkers.class.wait();
+                w = idle.poll();
+                if( w == null ) ++workerCount; }
+            if( w == null ) {
+                try { return new Worker(); }
+                catch( IOException|RuntimeException x ) {
+                    discard( null );
+                    throw x; }}
+            if( w.isResponsive() ) return w;
+            discard( w ); }} // And replace it, next time round.
+
+
+
+    /** Destroys any given worker and frees its place in the pool.
+      */
+    private static void discard( final Worker w ) {
+        if( w != null ) w.process.destroyForcibly();
+        synchronized( JavacWorkers.class ) {
+            --workerCount;
+            JavacWorkers.class.notifyAll(); }}
+
+
+
+    private static final Deque<Worker> idle = new ArrayDeque<>();
+
+
+
+    /** The time in nanoseconds allowed a worker to answer a ping, before it is taken for hung.
+      * Generous enough to ride out a pause for garbage collection.
+      */
+    private static final long pingTimeout = 5_000_000_000L;
+
+
+
+    private static void release( final Worker w, final boolean isHealthy ) {
+        if( !isHealthy ) {
+            discard( w );
+            return; }
+        synchronized( JavacWorkers.class ) {
+            idle.push( w ); // Last in, first out, so favouring the warmest.
+            JavacWorkers.class.notifyAll(); }}
+
+
+
+    private static int workerCount; // Of workers started and not yet discarded.
+
+
+
+   // ▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀
+
+
+    /** A worker process together with the streams of its requests and answers.  It ends when
+      * the present runtime ends, on reaching the end of its input.
+      */
+    private static final class Worker {
+
+
+        Worker() throws IOException {
+            final ProcessBuilder pB = new ProcessBuilder( System.getProperty("java.home") + "/bin/java",
+              "--class-path", outDirectory.toString(), JavacWorker.class.getName() );
+            pB.redirectError( INHERIT );
+            process = pB.start();
+            in = new DataInputStream( new BufferedInputStream( process.getInputStream() ));
+            out = new DataOutputStream( new BufferedOutputStream( process.getOutputStream() )); }
+
+
+        Result compile( final List<String> arguments ) throws IOException {
+            out.writeByte( COMPILE );
+            out.writeInt( arguments.size() );
+            for( final String a: arguments ) writeString( out, a );
+            out.flush();
+            final int exitValue = in.readInt();
+            return new Result( exitValue, readString( in )); }
+
+
+        private final DataInputStream in;
+
+
+        /** Answers whether the worker is alive and answers a ping within the time allowed.
+          */
+        boolean isResponsive() throws InterruptedException {
+            if( !process.isAlive() ) return false;
+            try {
+                out.writeByte( PING );
+                out.flush();
+                final long deadline = System.nanoTime() + pingTimeout;
+                while( in.available() == 0 ) { // Polling, lest a hung worker block the read forever.
+                    if( !process.isAlive() || System.nanoTime() - deadline > 0 ) return false;
+                    Thread.sleep( 1 ); }
+                return in.read() == PING; }
+            catch( IOException x ) { return false; }}
+
+
+        private final DataOutputStream out;
+
+
+        final Process process; }}
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
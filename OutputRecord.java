@@ -0,0 +1,135 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static building.Makeshift.Bootstrap.outDirectory;
+import static building.Makeshift.Bootstrap.Unhandled;
+import static java.nio.file.Files.getLastModifiedTime;
+
+
+/** A record of which class files were compiled from which source files, by which Makeshift
+  * prunes the orphaned class files of deleted, renamed or restructured sources.  The record
+  * is kept per package, in a file named `.outputs` in the output directory of the package.
+  * Each line of the file gives the simple name of a source file followed by the simple names
+  * of its class files, separated by tabs.  Each change to the class files of a package is passed on
+  * to the {@linkplain ClassArchive class archive} of the package.
+  */
+public final class OutputRecord {
+
+
+    private OutputRecord() {}
+
+
+
+    /** Deletes the class files recorded for each source of `directory` that no longer exists.
+      *
+      *     @param directory The proper path of a directory of source files.
+      *     @param sourcesPresent The simple name of each source file now present in `directory`.
+      */
+    public static void prune( final Path directory, final Set<String> sourcesPresent ) {
+        final Path outputDirectory = outDirectory.resolve( directory );
+        synchronized( OutputRecord.class ) {
+            final Map<String,List<String>> record = read( outputDirectory );
+            if( !record.keySet().removeIf( source -> {
+                if( sourcesPresent.contains( source )) return false;
+                for( final String c: record.get( source )) delete( outputDirectory.resolve( c ));
+                return true; })) return;
+            write( outputDirectory, record ); }
+        ClassArchive.sync( outputDirectory ); }
+
+
+
+    /** Gives the simple name of the source file from which a class file was compiled,
+      * as the class file records it, else as guessed from the name of the class file.
+      *
+      *     @param classFile The path of the class file.
+      */
+    public static String sourceOf( final Path classFile ) throws IOException {
+        final String source = ClassFile.read(classFile).sourceFile;
+        if( source != null ) return source;
+        final String c = classFile.getFileName().toString();
+        final int d = c.indexOf( '$' );
+        return c.substring( 0, d < 0 ? c.length() - ".class".length() : d ) + ".java"; }
+
+
+
+    /** Records the class files output by a compilation.  Deletes any class files formerly recorded
+      * for the same sources, which the compilation did not output again.
+      *
+      *     @param sourceNames The proper path of each source file compiled.
+      *     @param compileStart A time no later than the start of the compilation.
+      */
+    public static void update( final List<String> sourceNames, final FileTime compileStart ) {
+        final Map<Path,Set<String>> sourcesByDirectory = new HashMap<>();
+        for( final String n: sourceNames ) {
+            final Path s = Path.of( n );
+            sourcesByDirectory.computeIfAbsent( s.getParent(), _d -> new HashSet<>() )
+              .add( s.getFileName().toString() ); }
+        sourcesByDirectory.forEach( (directory, sources) -> {
+            final Path outputDirectory = outDirectory.resolve( directory );
+            final Map<String,List<String>> outputs = new HashMap<>();
+            try( final Stream<Path> pp = Files.list( outputDirectory )) {
+                for( final Path p: (Iterable<Path>)pp::iterator ) {
+                    final String c = p.getFileName().toString();
+                    if( !c.endsWith( ".class" )) continue;
+                    if( getLastModifiedTime(p).compareTo(compileStart) < 0 ) continue; // Not output.
+                    final String source = sourceOf( p );
+                    if( sources.contains( source )) {
+                        outputs.computeIfAbsent( source, _s -> new ArrayList<>() ).add( c ); }}}
+            catch( NoSuchFileException x ) { return; } // Output went elsewhere, given an unusual package.
+            catch( IOException x ) { throw new Unhandled( x ); }
+            synchronized( OutputRecord.class ) {
+                final Map<String,List<String>> record = read( outputDirectory );
+                for( final String source: sources ) {
+                    final List<String> cc = outputs.getOrDefault( source, List.of() );
+                    for( final String c: record.getOrDefault( source, List.of() )) {
+                        if( cc.contains( c )) continue;
+                        final Path p = outputDirectory.resolve( c );
+                        try { // Unless since output by another compilation, as when a class is moved:
+                            if( getLastModifiedTime(p).compareTo(compileStart) < 0 ) delete( p ); }
+                        catch( NoSuchFileException x ) {}
+                        catch( IOException x ) { throw new Unhandled( x ); }}
+                    if( cc.isEmpty() ) record.remove( source );
+                    else record.put( source, cc ); }
+                write( outputDirectory, record ); }
+            ClassArchive.sync( outputDirectory ); }); }
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    private static void delete( final Path p ) {
+        try { Files.deleteIfExists( p ); }
+        catch( IOException x ) { throw new Unhandled( x ); }}
+
+
+
+    private static Map<String,List<String>> read( final Path outputDirectory ) {
+        final Map<String,List<String>> record = new HashMap<>();
+        final List<String> lines;
+        try { lines = Files.readAllLines( outputDirectory.resolve( ".outputs" )); }
+        catch( NoSuchFileException x ) { return record; }
+        catch( IOException x ) { throw new Unhandled( x ); }
+        for( final String line: lines ) {
+            final String[] names = line.split( "\t" );
+            record.put( names[0], new ArrayList<>( Arrays.asList(names).subList( 1, names.length ))); }
+        return record; }
+
+
+
+    private static void write( final Path outputDirectory, final Map<String,List<String>> record ) {
+        final List<String> lines = new ArrayList<>( record.size() );
+        record.forEach( (source, cc) -> lines.add( source + '\t' + String.join( "\t", cc )));
+        try { Files.write( outputDirectory.resolve( ".outputs" ), lines ); }
+        catch( IOException x ) { throw new Unhandled( x ); }}}
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
@@ -0,0 +1,377 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+import static building.Makeshift.Bootstrap.outDirectory;
+import static building.Makeshift.Bootstrap.projectPath;
+import static building.Makeshift.Bootstrap.Unhandled;
+
+
+/** A record of the decisions to recompile, each with its reason, by which Makeshift may explain
+  * a build.  Explanation is enabled by system property `building.Makeshift.explain`, as set
+  * by `build --explain`.  At the end of such a build, the {@linkplain #printReport() report} gives
+  * for each project and source file recompiled the chain of reasons that led to it, followed
+  * by the costliest of the avoidable recompilations.
+  *
+  * <p>Two further records persist between builds.  The digest of each source file as last compiled
+  * is kept in a file named `.digests` in the output directory of its package, each line giving
+  * the simple name of a source file, its digest and the time of recording, separated by tabs.
+  * This allows a change of content to be told from a mere change of time.  Because it costs a reading
+  * of each source compiled, it is kept only where explanation is enabled, or system property
+  * `building.Makeshift.recordDigests` is ‘true’.  A digest recorded before the last compilation
+  * of its source is disregarded.  The additional `javac` arguments last used for each project
+  * are kept regardless, in file `javac_arguments/<i>projectPackage</i>` under the output directory
+  * of Makeshift, one argument per line.  This allows a change of arguments to force recompilation.</p>
+  *
+  *     @see <a href='http://reluk.ca/project/building/Makeshift/bin/build.brec'>The `build` command</a>
+  */
+public final class RebuildRecord {
+
+
+    private RebuildRecord() {}
+
+
+
+    /** Records that the building code of a project is to be compiled, noting as a cause any of its
+      * dependencies whose building code was compiled earlier in the present runtime.  Does nothing
+      * unless explanation is enabled.
+      *
+      *     @param projectPackage The proper package of the project.
+      *     @param dependencies The proper package of each project whose building code it depends on.
+      */
+    public static void buildingCodeCompiling( final String projectPackage,
+          final Set<String> dependencies ) {
+        if( !isEnabled ) return;
+        synchronized( RebuildRecord.class ) {
+            for( final String d: dependencies ) {
+                if( projectsCompiling.contains( d )) project(projectPackage).dependencies.add( d ); }
+            projectsCompiling.add( projectPackage ); }}
+
+
+
+    /** Records the compilation of Java source code.  Call this after successful compilation.
+      *
+      *     @param projectPackage The proper package of the project whose source code was compiled,
+      *       or null if the builder builder was compiled.
+      *     @param sourceNames The proper path of each source file compiled.
+      *     @param nanoseconds The time taken to compile them.
+      */
+    public static void compiled( final String projectPackage, final List<String> sourceNames,
+          final long nanoseconds ) {
+        final Map<Path,Map<String,String>> digestsByDirectory = new HashMap<>();
+        if( isEnabled || isRecordingDigests ) {
+            final long now = System.currentTimeMillis(); // Not before the class files.
+            for( final String n: sourceNames ) {
+                final Path s = Path.of( n );
+                digestsByDirectory.computeIfAbsent( s.getParent(), _d -> new HashMap<>() )
+                  .put( s.getFileName().toString(), digest(s) + '\t' + now ); }}
+        synchronized( RebuildRecord.class ) {
+            digestsByDirectory.forEach( (directory, digests) -> {
+                final Map<String,String> record = readDigests( outDirectory.resolve( directory ));
+                record.putAll( digests );
+                record.keySet().removeIf( s -> !Files.exists( directory.resolve( s )));
+                writeDigests( outDirectory.resolve( directory ), record ); });
+            if( !isEnabled ) return;
+            final double cost = nanoseconds / 1e9 / sourceNames.size();
+            final Recompilation project = project( projectPackage == null ?
+              "building.Makeshift (bootstrap)" : projectPackage );
+            for( final String n: sourceNames ) {
+                Decision d = decisions.remove( Path.of( n ));
+                if( d == null ) d = new Decision( Reason.unknown, "" ); // As for a source given directly.
+                d.cost = cost;
+                project.decisions.put( n, d ); }}}
+
+
+
+    /** Records the reason for a decision to compile a source file.  Does nothing unless explanation
+      * is enabled.
+      *
+      *     @param sourceFile The proper path of the source file.
+      *     @param detail A detailed account of the reason, or an empty string if there is none.
+      */
+    public static void decide( final Path sourceFile, final Reason reason, final String detail ) {
+        if( !isEnabled ) return;
+        synchronized( RebuildRecord.class ) {
+            decisions.putIfAbsent( sourceFile, new Decision( reason, detail )); }}
+
+
+
+    /** Records a decision to compile a source file whose class file predates it, determining
+      * whether its content has changed since it was last compiled.  Does nothing unless explanation
+      * is enabled.
+      *
+      *     @param sourceFile The proper path of the source file.
+      *     @param sourceTime Its time of last modification.
+      *     @param classTime The time of last modification of its class file.
+      */
+    public static void decideStale( final Path sourceFile, final FileTime sourceTime,
+          final FileTime classTime ) {
+        if( !isEnabled ) return;
+        final String record;
+        synchronized( RebuildRecord.class ) {
+            record = readDigests( outDirectory.resolve( sourceFile.getParent() ))
+              .get( sourceFile.getFileName().toString() ); }
+        String was = null; // Digest as last compiled, if known.
+        if( record != null ) {
+            final int t = record.indexOf( '\t' );
+            try {
+                if( t > 0 && Long.parseLong(record.substring(t+1)) >= classTime.toMillis() ) {
+                    was = record.substring( 0, t ); }} // Else recorded before the last compilation.
+            catch( NumberFormatException x ) {}} // Malformed, so disregarded.
+        final String times = "source " + sourceTime + " ≥ class file " + classTime;
+        if( was == null ) decide( sourceFile, Reason.timeChange, times + ", content not on record" );
+        else if( was.equals( digest( sourceFile ))) decide( sourceFile, Reason.touch, times );
+        else decide( sourceFile, Reason.contentChange, times ); }
+
+
+
+    /** Answers whether the additional `javac` arguments of a project differ from those with which
+      * it was last compiled.  Lacking a record of its last compilation, answers false.
+      *
+      *     @param projectPackage The proper package of the project.
+      *     @param arguments The additional arguments it would now be compiled with.
+      *     @see #recordArguments(String,List)
+      */
+    public static boolean isArgumentChange( final String projectPackage, final List<String> arguments ) {
+        try { return !Files.readAllLines( argumentsFile( projectPackage )).equals( arguments ); }
+        catch( NoSuchFileException x ) { return false; }
+        catch( IOException x ) { throw new Unhandled( x ); }}
+
+
+
+    /** Whether explanation is enabled.
+      */
+    public static final boolean isEnabled = Boolean.getBoolean( "building.Makeshift.explain" );
+
+
+
+    /** Whether to record the digests of source files regardless of explanation.
+      */
+    public static final boolean isRecordingDigests = Boolean.getBoolean(
+      "building.Makeshift.recordDigests" );
+
+
+
+    /** Prints the report of the present build through standard output.
+      */
+    public static void printReport() {
+        final var o = System.out;
+        synchronized( RebuildRecord.class ) {
+            o.println( "Explanation of recompilations" );
+            if( projects.isEmpty() ) o.println( "    Nothing was recompiled." );
+            final List<Map.Entry<String,Decision>> avoidable = new ArrayList<>();
+            new TreeMap<>(projects).forEach( (project, r) -> {
+                if( r.decisions.isEmpty() ) return; // Only a dependency was recorded.
+                o.print( "    " );
+                o.print( project );
+                if( !r.dependencies.isEmpty() ) {
+                    o.print( " ← after recompilation of " );
+                    o.print( String.join( ", ", new TreeSet<>( r.dependencies ))); }
+                o.println();
+                new TreeMap<>(r.decisions).forEach( (source, d) -> {
+                    o.print( "        " );
+                    o.print( source );
+                    o.print( " ← " );
+                    o.print( d.reason.description );
+                    if( !d.detail.isEmpty() ) {
+                        o.print( " ← " );
+                        o.print( d.detail ); }
+                    o.println();
+                    if( d.reason.isAvoidable ) avoidable.add( Map.entry( source, d )); }); });
+            if( avoidable.isEmpty() ) return;
+            avoidable.sort( (a, b) -> Double.compare( b.getValue().cost, a.getValue().cost ));
+            o.println( "Costliest avoidable recompilations" );
+            for( final var a: avoidable.subList( 0, Math.min( avoidable.size(), reportLimit ))) {
+                o.printf( "    %7.3f s  %s%n", a.getValue().cost, a.getKey() ); }}}
+
+
+
+    /** Records the additional `javac` arguments with which a project was compiled.
+      *
+      *     @param projectPackage The proper package of the project.
+      *     @param arguments The additional arguments.
+      *     @see #isArgumentChange(String,List)
+      */
+    public static void recordArguments( final String projectPackage, final List<String> arguments ) {
+        final Path f = argumentsFile( projectPackage );
+        try {
+            if( Files.exists( f ) && Files.readAllLines( f ).equals( arguments )) return;
+            Files.createDirectories( f.getParent() );
+            Files.write( f, arguments ); }
+        catch( IOException x ) { throw new Unhandled( x ); }}
+
+
+
+   // ▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀
+
+
+    /** A reason to compile a source file.
+      */
+    public enum Reason {
+
+
+        /** The additional arguments for `javac` have changed since the last compilation.
+          */
+        argumentChange( "javac arguments changed", false ),
+
+
+        /** The content of the source file has changed since it was last compiled.
+          */
+        contentChange( "content changed", false ),
+
+
+        /** The class file of the source is missing, as when never yet compiled.
+          */
+        missingOutput( "class file missing", false ),
+
+
+        /** The source file is newer than its class file, whether or not its content has changed,
+          * there being no record of its content when last compiled.
+          */
+        timeChange( "time changed", false ),
+
+
+        /** The source file is newer than its class file, but its content is as last compiled.
+          * The recompilation was avoidable.
+          */
+        touch( "time changed but content unchanged, avoidable", true ),
+
+
+        /** No decision was recorded, as when the source file was given directly for compilation.
+          */
+        unknown( "no recorded decision", false );
+
+
+        private Reason( final String description, final boolean isAvoidable ) {
+            this.description = description;
+            this.isAvoidable = isAvoidable; }
+
+
+        /** A short description of the reason.
+          */
+        public final String description;
+
+
+        /** Whether the recompilation was avoidable, given more knowledge than file times.
+          */
+        public final boolean isAvoidable; }
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    private static Path argumentsFile( final String projectPackage ) {
+        return outDirectory.resolve( projectPath ).resolve( "javac_arguments" ).resolve( projectPackage ); }
+
+
+
+    private static final class Decision {
+
+
+        Decision( final Reason reason, final String detail ) {
+            this.reason = reason;
+            this.detail = detail; }
+
+
+        /** The time in seconds attributed to compiling the source file, a share of its compilation.
+          */
+        double cost;
+
+
+        final String detail;
+
+
+        final Reason reason; }
+
+
+
+    /** Decisions not yet matched to a compilation, each keyed by the proper path of its source file.
+      * Guarded by the class monitor.
+      */
+    private static final Map<Path,Decision> decisions = new HashMap<>();
+
+
+
+    private static String digest( final Path sourceFile ) {
+        final CRC32C c = new CRC32C();
+        try { c.update( Files.readAllBytes( sourceFile )); }
+        catch( NoSuchFileException x ) { return ""; } // Deleted since, so never equal to a digest.
+        catch( IOException x ) { throw new Unhandled( x ); }
+        return Long.toHexString( c.getValue() ); }
+
+
+
+    /** The recompilations of the present runtime, keyed by the proper package of each project.
+      * Guarded by the class monitor.
+      */
+    private static final Map<String,Recompilation> projects = new HashMap<>();
+
+
+
+    private static Recompilation project( final String projectPackage ) {
+        return projects.computeIfAbsent( projectPackage, _p -> new Recompilation() ); }
+
+
+
+    /** The proper package of each project whose building code was compiled in the present runtime.
+      * Guarded by the class monitor.
+      */
+    private static final Set<String> projectsCompiling = new HashSet<>();
+
+
+
+    /** Reads the `.digests` file of the given output directory.
+      *
+      *     @return The simple name of each source file recorded, mapped to its digest and time
+      *       of recording, separated by a tab.
+      */
+    private static Map<String,String> readDigests( final Path outputDirectory ) {
+        final Map<String,String> record = new HashMap<>();
+        final List<String> lines;
+        try { lines = Files.readAllLines( outputDirectory.resolve( ".digests" )); }
+        catch( NoSuchFileException x ) { return record; }
+        catch( IOException x ) { throw new Unhandled( x ); }
+        for( final String line: lines ) {
+            final int t = line.indexOf( '\t' );
+            if( t > 0 ) record.put( line.substring( 0, t ), line.substring( t + 1 )); }
+        return record; }
+
+
+
+    private static final class Recompilation {
+
+
+        /** Each source file recompiled, mapped to the decision that led to it.
+          */
+        final Map<String,Decision> decisions = new HashMap<>();
+
+
+        /** The proper package of each project on which this one depends, that was compiled beforehand.
+          */
+        final Set<String> dependencies = new HashSet<>(); }
+
+
+
+    /** The greatest number of avoidable recompilations to report.
+      */
+    private static final int reportLimit = 10;
+
+
+
+    private static void writeDigests( final Path outputDirectory, final Map<String,String> record ) {
+        final List<String> lines = new ArrayList<>( record.size() );
+        record.forEach( (source, digestAndTime) -> lines.add( source + '\t' + digestAndTime ));
+        try { Files.write( outputDirectory.resolve( ".digests" ), lines ); }
+        catch( NoSuchFileException x ) {} // Output went elsewhere, given an unusual package.
+        catch( IOException x ) { throw new Unhandled( x ); }}}
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
@@ -0,0 +1,124 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static building.Makeshift.Project.addBuildInput;
+import static building.Makeshift.Project.outDirectory;
+import static building.Makeshift.Project.printProgressLeader;
+import static building.Makeshift.Project.Unhandled;
+import static building.Makeshift.Project.UserError;
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.StandardOpenOption.*;
+
+
+/** A copier of resource files from source directories to their output directories, which it keeps
+  * as mirrors of the source.  It copies only files that are new or changed since last copied, judging
+  * by their size and time of last modification, and it deletes the copies of files since removed.
+  * Where the file system allows, it makes each copy a hard link to its source.  Otherwise it copies
+  * by channel transfer, which the platform may perform without passing the content through
+  * the buffers of the runtime.  It copies files in parallel.
+  *
+  * <p>The names of the resource files copied to an output directory are recorded in a file
+  * named `.resources` in that directory, one name per line.</p>
+  */
+public final class ResourceCopier {
+
+
+    private ResourceCopier() {}
+
+
+
+    /** Copies resource files to the output directory.  Does not descend into subdirectories.
+      *
+      *     @param projectPackage The proper package of the project whose resources are being copied.
+      *     @param directories The proper path of each directory whose resource files to copy.
+      *     @param tester A test of whether a file is a resource file.
+      */
+    public static void copy( final String projectPackage, final Collection<Path> directories,
+          final Predicate<Path> tester ) throws UserError {
+        final List<Path> toCopy = new ArrayList<>();
+        for( final Path directory: directories ) {
+            addBuildInput( directory ); // Before listing it, lest a concurrent change go unrecorded.
+            final Set<String> resourcesPresent = new HashSet<>();
+            try( final Stream<Path> pp = Files.list( directory )) {
+                for( final Path p: (Iterable<Path>)pp::iterator ) {
+                    if( !Files.isRegularFile( p ) || !tester.test( p )) continue;
+                    resourcesPresent.add( p.getFileName().toString() );
+                    addBuildInput( p ); // Its content too, which a change to the directory would miss.
+                    if( isStale( p )) toCopy.add( p ); }}
+            catch( IOException x ) { throw new Unhandled( x ); }
+            prune( outDirectory.resolve( directory ), resourcesPresent ); }
+        if( toCopy.isEmpty() ) return;
+        final WorkGroup g = new WorkGroup();
+        for( final Path p: toCopy ) g.fork( () -> copy( p ));
+        g.join();
+        final var o = System.out;
+        synchronized( o ) {
+            printProgressLeader( projectPackage, "resources" );
+            o.println( toCopy.size() ); }}
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    private static void copy( final Path source ) {
+        final Path target = outDirectory.resolve( source );
+        try {
+            Files.createDirectories( target.getParent() );
+            Files.deleteIfExists( target ); // Never writing through it, for it may be linked to a source.
+            try {
+                Files.createLink( target, source );
+                return; }
+            catch( UnsupportedOperationException|FileSystemException x ) {} // E.g. across file systems.
+            try( final FileChannel in = FileChannel.open( source, READ );
+                  final FileChannel out = FileChannel.open( target, CREATE_NEW, WRITE )) {
+                final long size = in.size();
+                for( long p = 0; p < size; ) p += in.transferTo( p, size - p, out ); }
+            Files.setLastModifiedTime( target, getLastModifiedTime( source )); }
+              // Last, so an interrupted copy will test as stale.
+        catch( IOException x ) { throw new Unhandled( x ); }}
+
+
+
+    /** Answers whether the copy of `source` in the output directory is missing or out of date.
+      */
+    private static boolean isStale( final Path source ) throws IOException {
+        final BasicFileAttributes t;
+        try { t = Files.readAttributes( outDirectory.resolve(source), BasicFileAttributes.class ); }
+        catch( NoSuchFileException x ) { return true; }
+        final BasicFileAttributes s = Files.readAttributes( source, BasicFileAttributes.class );
+        return t.size() != s.size()
+          || t.lastModifiedTime().toMillis() != s.lastModifiedTime().toMillis(); }
+
+
+
+    /** Deletes from `outputDirectory` the copy of each resource file recorded as copied there,
+      * that is no longer present in the source directory.  Records as copied all those present.
+      */
+    private static void prune( final Path outputDirectory, final Set<String> resourcesPresent ) {
+        final Path recordFile = outputDirectory.resolve( ".resources" );
+        final Set<String> recorded = new HashSet<>();
+        try {
+            try { recorded.addAll( Files.readAllLines( recordFile )); }
+            catch( NoSuchFileException x ) {}
+            if( recorded.equals( resourcesPresent )) return;
+            for( final String r: recorded ) {
+                if( !resourcesPresent.contains( r )) Files.deleteIfExists( outputDirectory.resolve( r )); }
+            if( resourcesPresent.isEmpty() ) Files.deleteIfExists( recordFile );
+            else {
+                Files.createDirectories( outputDirectory );
+                Files.write( recordFile, new TreeSet<>( resourcesPresent )); }}
+        catch( IOException x ) { throw new Unhandled( x ); }}}
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
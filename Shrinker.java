@@ -0,0 +1,257 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.jar.*;
+import java.util.stream.Stream;
+
+import static building.Makeshift.Project.outDirectory;
+import static building.Makeshift.Project.pathOf;
+import static building.Makeshift.Project.printProgressLeader;
+import static building.Makeshift.Project.Unhandled;
+import static building.Makeshift.Project.UserError;
+import static java.io.File.separatorChar;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+
+/** A shrinker of Java class files, which packs into a jar only the classes reachable from given entry
+  * points.  It reads the class files of the output directory, starting with those of the entry points,
+  * and follows every reference from one class to another: through its superclass and interfaces,
+  * the classes and members of its constant pool, its descriptors and signatures, and any string
+  * constant in the form of a class name, which might serve to load a class reflectively.  Classes
+  * outside of the output directory, such as those of the Java platform, are left out.
+  * The resource files of each package that contributes a class are packed with them, insofar as
+  * they were {@linkplain ResourceCopier copied} to the output directory.
+  *
+  * <p>The jar is written to `.shrunk/<i>projectPackage</i>.jar` under the output directory
+  * of the project, where a clean of the project removes it.  Beside it goes a list of the members
+  * of the packed classes to which no packed class refers by name and descriptor, and which override
+  * no member of a class outside of the output directory.  These are candidates for removal from
+  * the source code.  They are reported only, not removed, because calls by reflection or by
+  * the platform are beyond the reach of this analysis.</p>
+  */
+public final class Shrinker {
+
+
+    private Shrinker() {}
+
+
+
+    /** Writes the jar of the classes reachable from `entryPoints`, and reports the savings.
+      *
+      *     @param projectPackage The proper package of the project whose classes are being shrunk.
+      *     @param directories The proper path of each directory of the project's Java code.
+      *       The class files compiled from these form the totals against which the savings
+      *       are reported, together with any other class files of the packages that contribute
+      *       a reachable class.
+      *     @param entryPoints The binary name of each entry point, e.g. `wet.sprocket.Toad`.
+      *     @param isBuildingCode A test of whether a source file, given by its proper path,
+      *       is building code.  Class files compiled from building code are left out of the totals
+      *       against which the savings are reported, unless they are reachable.
+      *     @throws UserError If an entry point has no class file.
+      */
+    public static void shrink( final String projectPackage, final Collection<Path> directories,
+          final Set<String> entryPoints, final Predicate<Path> isBuildingCode ) throws UserError {
+        try {
+
+          // Find the reachable classes
+          // ──────────────────────────
+            final Map<String,ClassFile> reachable = new TreeMap<>(); // By internal name.
+            final Deque<String> toVisit = new ArrayDeque<>();
+            for( final String e: entryPoints ) {
+                final String n = e.replace( '.', '/' );
+                if( !Files.isRegularFile( classFile( n ))) {
+                    throw new UserError( "No class file for entry point `" + e + "`" ); }
+                toVisit.add( n ); }
+            while( !toVisit.isEmpty() ) {
+                final String n = toVisit.remove();
+                if( reachable.containsKey( n )) continue;
+                final Path f = classFile( n );
+                if( !Files.isRegularFile( f )) continue; // Outside of the output directory.
+                final ClassFile c = ClassFile.read( f );
+                reachable.put( n, c );
+                final List<String> references = new ArrayList<>( c.classReferences() );
+                references.addAll( c.classLikeStrings() );
+                references.addAll( c.interfaceNames );
+                if( c.superName != null ) references.add( c.superName );
+                for( final ClassFile.Member m: c.memberReferences() ) references.add( m.owner );
+                for( final String r: references ) if( !reachable.containsKey( r )) toVisit.add( r ); }
+
+          // Find the unreferenced members
+          // ─────────────────────────────
+            final Set<String> referenced = new HashSet<>(); // Name and descriptor of members.
+            final Map<String,Set<String>> externalMembers = new HashMap<>();
+            for( final ClassFile c: reachable.values() ) {
+                for( final ClassFile.Member m: c.memberReferences() ) {
+                    referenced.add( m.name + m.descriptor ); }
+                if( c.superName != null ) referenced.addAll( externalMembers( c.superName, reachable,
+                  externalMembers ));
+                for( final String i: c.interfaceNames ) {
+                    referenced.addAll( externalMembers( i, reachable, externalMembers )); }}
+            final List<String> unreferenced = new ArrayList<>();
+            int memberCount = 0;
+            for( final ClassFile c: reachable.values() ) {
+                final boolean isEntryPoint = entryPoints.contains( c.name.replace( '/', '.' ));
+                for( final List<ClassFile.Member> mm: List.of( c.fields, c.methods )) {
+                    for( final ClassFile.Member m: mm ) {
+                        if( (m.accessFlags & ACC_SYNTHETIC) != 0 || m.name.startsWith( "<" )) continue;
+                        ++memberCount;
+                        if( isEntryPoint && m.name.equals("main")
+                          && m.descriptor.equals("([Ljava/lang/String;)V") ) continue;
+                        if( referenced.contains( m.name + m.descriptor )) continue;
+                        unreferenced.add( c.name.replace( '/', '.' ) + '.' + m.name + ' '
+                          + m.descriptor ); }}}
+
+          // Write the jar
+          // ─────────────
+            final Path directory = outDirectory.resolve( pathOf( projectPackage )).resolve( ".shrunk" );
+            Files.createDirectories( directory );
+            final Path jar = directory.resolve( projectPackage + ".jar" );
+            final Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+            if( entryPoints.size() == 1 ) {
+                final String e = entryPoints.iterator().next();
+                if( hasMain( reachable.get( e.replace( '.', '/' )))) {
+                    manifest.getMainAttributes().put( Attributes.Name.MAIN_CLASS, e ); }}
+            final Set<Path> packageDirectories = new TreeSet<>();
+            long sizeKept = 0;
+            final Path jarNew = jar.resolveSibling( jar.getFileName() + ".new" );
+            try( final JarOutputStream out = new JarOutputStream( new BufferedOutputStream(
+                  Files.newOutputStream( jarNew )), manifest )) {
+                for( final String n: reachable.keySet() ) {
+                    final Path f = classFile( n );
+                    sizeKept += Files.size( f );
+                    packageDirectories.add( f.getParent() );
+                    put( out, n + ".class", f ); }
+                for( final Path d: packageDirectories ) {
+                    final List<String> resources;
+                    try { resources = Files.readAllLines( d.resolve( ".resources" )); }
+                    catch( NoSuchFileException x ) { continue; }
+                    for( final String r: resources ) {
+                        final Path p = d.resolve( r );
+                        if( Files.isRegularFile( p )) {
+                            put( out, outDirectory.relativize(p).toString().replace(separatorChar,'/'),
+                              p ); }}}}
+            Files.move( jarNew, jar, ATOMIC_MOVE, REPLACE_EXISTING ); // Never a partial jar.
+            final Path unreferencedFile = directory.resolve( projectPackage + ".unreferenced" );
+            Collections.sort( unreferenced );
+            Files.write( unreferencedFile, unreferenced );
+
+          // Report the savings
+          // ──────────────────
+            int classCount = 0; // In the packages of the project or that contribute a class,
+            long size = 0;      // less any building code.
+            final Set<Path> reachableFiles = new HashSet<>();
+            reachable.keySet().forEach( n -> reachableFiles.add( classFile( n )));
+            final Set<Path> countedDirectories = new TreeSet<>( packageDirectories );
+            directories.forEach( d -> countedDirectories.add( outDirectory.resolve( d )));
+            for( final Path d: countedDirectories ) {
+                final Path sourceDirectory = outDirectory.relativize( d );
+                try( final Stream<Path> pp = Files.list( d )) {
+                    for( final Path p: (Iterable<Path>)pp::iterator ) {
+                        if( !p.getFileName().toString().endsWith( ".class" )) continue;
+                        if( !reachableFiles.contains( p ) && isBuildingCode.test(
+                          sourceDirectory.resolve( OutputRecord.sourceOf(p) ))) continue;
+                        ++classCount;
+                        size += Files.size( p ); }}
+                catch( NoSuchFileException x ) {}} // No class file was compiled to `d`.
+            final var o = System.out;
+            synchronized( o ) {
+                printProgressLeader( projectPackage, "shrink" );
+                o.printf( "%d of %d classes (%d%% fewer), %d of %d kB (%d%% smaller) → %s%n",
+                  reachable.size(), classCount, percentSaved( reachable.size(), classCount ),
+                  kB( sizeKept ), kB( size ), percentSaved( sizeKept, size ), jar );
+                o.printf( "        unreferenced members %d of %d → %s%n", unreferenced.size(),
+                  memberCount, unreferencedFile ); }}
+        catch( IOException x ) { throw new Unhandled( x ); }}
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    private static final int ACC_PRIVATE = 0x0002;
+
+
+
+    private static final int ACC_PUBLIC = 0x0001;
+
+
+
+    private static final int ACC_STATIC = 0x0008;
+
+
+
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+
+
+    private static Path classFile( final String internalName ) {
+        return outDirectory.resolve( internalName.replace( '/', separatorChar ) + ".class" ); }
+
+
+
+    /** Gives the name and descriptor of each non-private method declared by the class named `n`
+      * or inherited from its supertypes, counting only those classes outside of `reachable`.
+      * Gives nothing for a class that cannot be read, which is then taken to declare nothing.
+      *
+      *     @param cache Sets already given, each keyed by class name.
+      */
+    private static Set<String> externalMembers( final String n, final Map<String,ClassFile> reachable,
+          final Map<String,Set<String>> cache ) throws IOException {
+        if( reachable.containsKey( n )) { // Then look only to its supertypes.
+            final ClassFile c = reachable.get( n );
+            final Set<String> members = new HashSet<>();
+            if( c.superName != null ) members.addAll( externalMembers( c.superName, reachable, cache ));
+            for( final String i: c.interfaceNames ) {
+                members.addAll( externalMembers( i, reachable, cache )); }
+            return members; }
+        Set<String> members = cache.get( n );
+        if( members != null ) return members;
+        members = new HashSet<>();
+        cache.put( n, members ); // Before recursing, though the hierarchy of a valid class is acyclic.
+        final ClassFile c;
+        try( final InputStream in = ClassLoader.getSystemResourceAsStream( n + ".class" )) {
+            if( in == null ) return members; // Unreadable, e.g. of a library absent at build time.
+            c = new ClassFile( new DataInputStream( new BufferedInputStream( in ))); }
+        for( final ClassFile.Member m: c.methods ) {
+            if( (m.accessFlags & ACC_PRIVATE) == 0 ) members.add( m.name + m.descriptor ); }
+        if( c.superName != null ) members.addAll( externalMembers( c.superName, reachable, cache ));
+        for( final String i: c.interfaceNames ) members.addAll( externalMembers( i, reachable, cache ));
+        return members; }
+
+
+
+    private static boolean hasMain( final ClassFile c ) {
+        for( final ClassFile.Member m: c.methods ) {
+            if( m.name.equals("main") && m.descriptor.equals("([Ljava/lang/String;)V")
+              && (m.accessFlags & (ACC_PUBLIC|ACC_STATIC)) == (ACC_PUBLIC|ACC_STATIC) ) return true; }
+        return false; }
+
+
+
+    private static long kB( final long bytes ) { return (bytes + 1023) / 1024; }
+
+
+
+    private static long percentSaved( final long kept, final long total ) {
+        return total == 0 ? 0 : 100 * (total - kept) / total; }
+
+
+
+    private static void put( final JarOutputStream out, final String name, final Path file )
+          throws IOException {
+        final JarEntry e = new JarEntry( name );
+        e.setLastModifiedTime( Files.getLastModifiedTime( file ));
+        out.putNextEntry( e );
+        Files.copy( file, out );
+        out.closeEntry(); }}
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
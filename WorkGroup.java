@@ -0,0 +1,228 @@
+package building.Makeshift;
+
+// Changes to this file immediately affect the next build.  Treat it as a build script.
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static building.Makeshift.Bootstrap.Unhandled;
+import static building.Makeshift.Bootstrap.UserError;
+
+
+/** A group of build work that runs concurrently and fails fast.  The first failure of any work
+  * in the group cancels the rest: work still queued is dropped, while work in progress is interrupted
+  * together with any process it has {@linkplain #register(Process) registered}.  Only the first
+  * failure is reported, later ones being taken for the likely effects of cancellation.
+  *
+  * <p>Groups nest.  Work of one group may fork and join a group of its own, and cancelling
+  * the outer group then cancels the inner group in turn.</p>
+  */
+public final class WorkGroup {
+
+
+    /** @param parallelism The maximum number of units of work to run at once.
+      */
+    public WorkGroup( final int parallelism ) {
+        if( parallelism < 1 ) throw new IllegalArgumentException();
+        this.parallelism = parallelism; }
+
+
+
+    /** Makes a group whose parallelism is the number of processors available.
+      */
+    public WorkGroup() { this( Runtime.getRuntime().availableProcessors() ); }
+
+
+
+    /** Cancels the group, as though on the failure of its work.  A subsequent `join` throws
+      * a `CancellationException` unless already the group had failed.
+      */
+    public void cancel() { fail( new CancellationException() ); }
+
+
+
+    /** Queues `work` to run concurrently with other work of the group.  Does nothing if already
+      * the group is cancelled.
+      */
+    public void fork( final Work work ) {
+        synchronized( this ) {
+            if( failure != null ) return;
+            queue.add( work );
+            if( running >= parallelism ) return;
+            ++running;
+            runningInAllGroups.incrementAndGet(); }
+        executor.execute( this::drain ); }
+
+
+
+    /** Answers whether other work might run concurrently with the calling thread, that is whether
+      * the calling thread is running work of a group, or any group has work running.
+      */
+    public static boolean isConcurrencyPossible() {
+        return groupRunning.get() != null || runningInAllGroups.get() > 0; }
+
+
+
+    /** Waits for all work of the group to end, then rethrows any failure.  If the calling thread
+      * is interrupted meanwhile, then first the group is cancelled.
+      *
+      *     @throws UserError On the first failure of work in the group, if so thrown.
+      */
+    public void join() throws UserError {
+        synchronized( this ) {
+            try { while( running > 0 ) wait(); }
+            catch( final InterruptedException x ) {
+                fail( x );
+                awaitEnd();
+                Thread.currentThread().interrupt(); // Avoid hiding the fact of interruption.
+                throw new Unhandled( x ); }
+            if( failure == null ) return;
+            if( failure instanceof UserError ) throw (UserError)failure;
+            if( failure instanceof RuntimeException ) throw (RuntimeException)failure;
+            if( failure instanceof Error ) throw (Error)failure;
+            throw new Unhandled( (Exception)failure ); }}
+
+
+
+    /** Registers `process` as started by work of the group that is running in the calling thread,
+      * so that cancellation of the group will destroy it.  Does nothing if the calling thread
+      * is not running work of a group.
+      *
+      *     @return The same `process`.
+      */
+    public static Process register( final Process process ) {
+        final WorkGroup group = groupRunning.get();
+        if( group != null ) {
+            synchronized( group ) {
+                if( group.failure != null ) destroy( process );
+                else {
+                    group.processes.add( process );
+                    process.onExit().thenRun( () -> {
+                        synchronized( group ) { group.processes.remove( process ); }}); }}}
+        return process; }
+
+
+
+    /** Reverses a {@linkplain #register(Process) registration} made in the calling thread, as when
+      * a process outlives the work that used it.  Does nothing if the calling thread is not running
+      * work of a group, or `process` is unregistered.
+      */
+    public static void unregister( final Process process ) {
+        final WorkGroup group = groupRunning.get();
+        if( group != null ) synchronized( group ) { group.processes.remove( process ); }}
+
+
+
+   // ▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀▀
+
+
+    /** A unit of work.
+      */
+    public static @FunctionalInterface interface Work {
+
+        public void run() throws UserError; }
+
+
+
+////  P r i v a t e  ////////////////////////////////////////////////////////////////////////////////////
+
+
+    /** Waits without interruption until no work of the group is running.
+      */
+    private synchronized void awaitEnd() {
+        boolean wasInterrupted = false;
+        while( running > 0 ) {
+            try { wait(); }
+            catch( InterruptedException x ) { wasInterrupted = true; }}
+        if( wasInterrupted ) Thread.currentThread().interrupt(); }
+
+
+
+    private static void destroy( final Process p ) {
+        p.descendants().forEach( ProcessHandle::destroyForcibly );
+        p.destroyForcibly(); }
+
+
+
+    /** Runs work of the group until none remains, or the group is cancelled.
+      */
+    private void drain() {
+        final Thread thread = Thread.currentThread();
+        for( ;; ) {
+            final Work work;
+            synchronized( this ) {
+                if( failure != null || queue.isEmpty() ) {
+                    --running;
+                    runningInAllGroups.decrementAndGet();
+                    notifyAll();
+                    return; }
+                work = queue.remove();
+                threads.add( thread ); }
+            groupRunning.set( this );
+            try { work.run(); }
+            catch( final Throwable x ) { fail( x ); }
+            finally {
+                groupRunning.remove();
+                synchronized( this ) { threads.remove( thread ); }
+                Thread.interrupted(); }}} /* Clearing any interrupt that was aimed at the work,
+                  lest it strike whatever next runs in this pooled thread. */
+
+
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool( r -> {
+        final Thread t = new Thread( r );
+        t.setDaemon( true );
+        return t; });
+
+
+
+    /** Records `x` as the failure of the group if it is the first, and cancels the group.
+      */
+    private synchronized void fail( final Throwable x ) {
+        if( failure != null ) return; // Likely an effect of the cancellation, so unreported.
+        failure = x;
+        queue.clear();
+        threads.forEach( Thread::interrupt );
+        processes.forEach( WorkGroup::destroy );
+        processes.clear(); }
+
+
+
+    private Throwable failure; // The first failure, or null if none has occured.
+
+
+
+    /** The group whose work is running in the present thread, if any.
+      */
+    private static final ThreadLocal<WorkGroup> groupRunning = new ThreadLocal<>();
+
+
+
+    private final int parallelism;
+
+
+
+    private final Set<Process> processes = new HashSet<>(); // Registered and possibly yet alive.
+
+
+
+    private final Queue<Work> queue = new ArrayDeque<>();
+
+
+
+    private int running; // Count of threads running work of the group.
+
+
+
+    /** The sum of `running` over all groups.
+      */
+    private static final AtomicInteger runningInAllGroups = new AtomicInteger();
+
+
+
+    private final Set<Thread> threads = new HashSet<>(); }
+
+
+
+                                                        // Copyright © 2021  Michael Allan.  Licence MIT.
@@ -16,7 +16,21 @@ public enum BuildTarget {
 
     /** Java class files compiled from source code.
       */
-    Java_class_files; }
+    Java_class_files,
+
+
+    /** Resource files of the Java code, such as property files, templates and images,
+      * copied alongside the Java class files where class loaders may find them.
+      */
+    Java_resources,
+
+
+    /** A jar of only those Java class files reachable from the entry points of the project,
+      * together with the resource files of their packages.  Includes `Java_class_files` implicitly,
+      * and `Java_resources` if that too is a target of the project.  The jar is written
+      * to `.shrunk/` under the project's output directory.
+      */
+    Java_shrunk_jar; }
 
 
 